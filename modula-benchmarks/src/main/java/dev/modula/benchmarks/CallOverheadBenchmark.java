@@ -0,0 +1,116 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.InstanceScope;
+import dev.modula.core.ModulaRuntime;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures the cost of calling into an isolated module through a shared interface.
+ *
+ * <ul>
+ *   <li>{@code hostBaseline}: the same kind of call on a class of the host, for reference.</li>
+ *   <li>{@code isolatedInstance}: a call on an instance obtained once from the module; crossing the
+ *   loader boundary itself should cost nothing.</li>
+ *   <li>{@code isolatedCall}: a call through {@link ModulaRuntime.IsolatedModule#call}, which looks up
+ *   the singleton and tracks the call as in flight so the module can be reloaded safely.</li>
+ *   <li>{@code manualContextSwitch}: a call on the instance with the module's class loader set as the thread
+ *   context class loader and restored by hand, the way call sites do it without a proxy.</li>
+ *   <li>{@code isolatedProxy}: the same through {@link ModulaRuntime.IsolatedModule#getProxy}, whose generated
+ *   class does the switch; it should cost about as much as {@code manualContextSwitch}.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CallOverheadBenchmark {
+
+    private static final Function<IntSupplier, Integer> GET_AS_INT = IntSupplier::getAsInt;
+
+    private Path dir;
+    private ModulaRuntime.IsolatedModule module;
+    private String exported;
+    private IntSupplier host;
+    private IntSupplier isolated;
+    private IntSupplier proxy;
+    private ClassLoader moduleLoader;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        dir = Files.createTempDirectory("modula-calloverhead");
+        List<Path> jars = SyntheticJars.write(dir, 2, 1);
+        exported = SyntheticJars.className(0, 0);
+        ModuleSpec spec = ModuleSpec.builder()
+                .name("calloverhead")
+                .adapterJar(jars.get(0))
+                .dependencyJar(jars.get(1))
+                .sharedPackages("java")
+                .exportedClasses(exported)
+                .build();
+        module = new ModulaRuntime().load(spec);
+        isolated = module.getInstance(exported, IntSupplier.class, InstanceScope.SINGLETON);
+        proxy = module.getProxy(exported, IntSupplier.class, InstanceScope.SINGLETON);
+        moduleLoader = isolated.getClass().getClassLoader();
+        host = new HostSupplier();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        module.close(0, TimeUnit.MILLISECONDS);
+        SyntheticJars.delete(dir);
+    }
+
+    @Benchmark
+    public int hostBaseline() {
+        return host.getAsInt();
+    }
+
+    @Benchmark
+    public int isolatedInstance() {
+        return isolated.getAsInt();
+    }
+
+    @Benchmark
+    public int isolatedCall() {
+        return module.call(exported, IntSupplier.class, InstanceScope.SINGLETON, GET_AS_INT);
+    }
+
+    @Benchmark
+    public int manualContextSwitch() {
+        Thread thread = Thread.currentThread();
+        ClassLoader saved = thread.getContextClassLoader();
+        thread.setContextClassLoader(moduleLoader);
+        try {
+            return isolated.getAsInt();
+        } finally {
+            thread.setContextClassLoader(saved);
+        }
+    }
+
+    @Benchmark
+    public int isolatedProxy() {
+        return proxy.getAsInt();
+    }
+
+    /**
+     * A host-side counterpart of the generated classes.
+     */
+    public static final class HostSupplier implements IntSupplier {
+        @Override
+        public int getAsInt() {
+            return 0;
+        }
+    }
+}
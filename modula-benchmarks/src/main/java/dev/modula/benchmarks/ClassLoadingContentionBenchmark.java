@@ -0,0 +1,125 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.ModulaClassLoader;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures class loading throughput of a single {@link ModulaClassLoader} against the number of
+ * threads loading from it at the same time.
+ *
+ * <p>Every iteration starts from a fresh loader. Each benchmark thread then loads
+ * {@value #CLASSES_PER_THREAD} distinct classes of its own synthetic JAR, so threads never wait for
+ * each other on the same class; any slowdown as threads are added comes from shared locks in the
+ * loader. The score is the time per loaded class seen by one thread; aggregate throughput is
+ * {@code threads / score}. Run {@link #main(String[])} to sweep 1 to 32 threads and write one JSON
+ * result file per thread count.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = 1)
+@Measurement(iterations = 20, batchSize = 1)
+@Fork(1)
+public class ClassLoadingContentionBenchmark {
+
+    static final int CLASSES_PER_THREAD = 2000;
+
+    private Path dir;
+    private ModuleSpec spec;
+    private ModulaClassLoader loader;
+
+    @Setup(Level.Trial)
+    public void writeJars(BenchmarkParams params) throws Exception {
+        dir = Files.createTempDirectory("modula-contention");
+        // One JAR per thread, plus one more so that the spec always has a dependency JAR.
+        List<Path> jars = SyntheticJars.write(dir, params.getThreads() + 1, CLASSES_PER_THREAD);
+        ModuleSpec.Builder builder = ModuleSpec.builder()
+                .name("contention")
+                .adapterJar(jars.get(0))
+                .sharedPackages("java");
+        for (Path jar : jars.subList(1, jars.size())) {
+            builder.dependencyJar(jar);
+        }
+        spec = builder.build();
+    }
+
+    @Setup(Level.Iteration)
+    public void newLoader() {
+        loader = new ModulaClassLoader(spec, ClassLoadingContentionBenchmark.class.getClassLoader());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeLoader() throws Exception {
+        loader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJars() throws Exception {
+        SyntheticJars.delete(dir);
+    }
+
+    /**
+     * The slice of classes loaded by one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadSlice {
+        String[] names;
+
+        @Setup(Level.Trial)
+        public void names(ThreadParams params) {
+            names = new String[CLASSES_PER_THREAD];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = SyntheticJars.className(params.getThreadIndex(), i);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLASSES_PER_THREAD)
+    public Class<?> loadDistinctClasses(ThreadSlice slice) throws ClassNotFoundException {
+        Class<?> last = null;
+        for (String name : slice.names) {
+            last = loader.loadClass(name);
+        }
+        return last;
+    }
+
+    /**
+     * Sweeps the benchmark over 1, 2, 4, 8, 16 and 32 threads and prints aggregate classes per second.
+     *
+     * @param args optional output directory for the JSON results (default {@code target})
+     * @throws Exception if a run fails
+     */
+    public static void main(String[] args) throws Exception {
+        String outDir = args.length > 0 ? args[0] : "target";
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32}) {
+            Options options = new OptionsBuilder()
+                    .include(ClassLoadingContentionBenchmark.class.getName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outDir + "/jmh-contention-t" + threads + ".json")
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                double microsPerClass = result.getPrimaryResult().getScore();
+                System.out.printf("threads=%2d  %.0f classes/s%n", threads, threads / microsPerClass * 1_000_000);
+            }
+        }
+    }
+}
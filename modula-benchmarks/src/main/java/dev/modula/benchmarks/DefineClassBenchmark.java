@@ -0,0 +1,80 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.ModulaClassLoader;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures defining every class of a fresh module: index lookup, read, package and protection domain
+ * lookup, and {@code defineClass}. Each invocation builds a new loader over the same JARs and loads all
+ * of their classes, so the figure per operation is the cost of one class, loader construction amortized.
+ *
+ * <p>Run it with the GC profiler to see the allocation per defined class, which is what a per-class
+ * {@link java.security.ProtectionDomain} or package lookup would show up in:</p>
+ * <pre>
+ * java -jar modula-benchmarks/target/benchmarks.jar DefineClassBenchmark -prof gc
+ * </pre>
+ * <p>and compare {@code gc.alloc.rate.norm} (bytes per class) between two builds.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DefineClassBenchmark {
+
+    static final int JARS = 4;
+    static final int CLASSES_PER_JAR = 2000;
+
+    private Path dir;
+    private ModuleSpec spec;
+    private String[] classNames;
+
+    @Setup(Level.Trial)
+    public void writeJars() throws Exception {
+        dir = Files.createTempDirectory("modula-defineclass");
+        List<Path> jars = SyntheticJars.write(dir, JARS, CLASSES_PER_JAR);
+        ModuleSpec.Builder builder = ModuleSpec.builder()
+                .name("defineclass")
+                .adapterJar(jars.get(0))
+                .sharedPackages("java");
+        for (Path jar : jars.subList(1, jars.size())) {
+            builder.dependencyJar(jar);
+        }
+        spec = builder.build();
+        classNames = new String[JARS * CLASSES_PER_JAR];
+        for (int j = 0; j < JARS; j++) {
+            for (int i = 0; i < CLASSES_PER_JAR; i++) {
+                classNames[j * CLASSES_PER_JAR + i] = SyntheticJars.className(j, i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJars() throws Exception {
+        SyntheticJars.delete(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JARS * CLASSES_PER_JAR)
+    public Class<?> defineAll() throws Exception {
+        Class<?> last = null;
+        ModulaClassLoader loader = new ModulaClassLoader(spec, DefineClassBenchmark.class.getClassLoader());
+        try {
+            for (String name : classNames) {
+                last = loader.loadClass(name);
+            }
+        } finally {
+            loader.close();
+        }
+        return last;
+    }
+}
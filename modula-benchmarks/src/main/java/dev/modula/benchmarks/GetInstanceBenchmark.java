@@ -0,0 +1,64 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.InstanceScope;
+import dev.modula.core.ModulaRuntime;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures {@link ModulaRuntime.IsolatedModule#getInstance(String, Class, InstanceScope)} throughput
+ * once the exported class has been resolved, for both instance scopes. Run with several threads
+ * ({@code -t}) to see how the cached lookup scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GetInstanceBenchmark {
+
+    private Path dir;
+    private ModulaRuntime.IsolatedModule module;
+    private String exported;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        dir = Files.createTempDirectory("modula-getinstance");
+        List<Path> jars = SyntheticJars.write(dir, 2, 1);
+        exported = SyntheticJars.className(0, 0);
+        ModuleSpec spec = ModuleSpec.builder()
+                .name("getinstance")
+                .adapterJar(jars.get(0))
+                .dependencyJar(jars.get(1))
+                .sharedPackages("java")
+                .exportedClasses(exported)
+                .build();
+        module = new ModulaRuntime().load(spec);
+        module.getInstance(exported, IntSupplier.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        module.close(0, TimeUnit.MILLISECONDS);
+        SyntheticJars.delete(dir);
+    }
+
+    @Benchmark
+    public IntSupplier prototype() {
+        return module.getInstance(exported, IntSupplier.class, InstanceScope.PROTOTYPE);
+    }
+
+    @Benchmark
+    public IntSupplier singleton() {
+        return module.getInstance(exported, IntSupplier.class, InstanceScope.SINGLETON);
+    }
+}
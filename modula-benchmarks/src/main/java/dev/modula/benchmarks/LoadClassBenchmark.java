@@ -0,0 +1,106 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.ModulaClassLoader;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ModulaClassLoader#loadClass(String)} on a warm loader for the paths a lookup can take:
+ * a module class that is already defined, a JDK class sent to the platform loader, a class of a shared
+ * package delegated to the parent, and a class that exists nowhere.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LoadClassBenchmark {
+
+    static final int CLASSES = 1000;
+
+    private Path dir;
+    private ModulaClassLoader loader;
+    private String[] moduleClasses;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        dir = Files.createTempDirectory("modula-loadclass");
+        List<Path> jars = SyntheticJars.write(dir, 2, CLASSES);
+        ModuleSpec spec = ModuleSpec.builder()
+                .name("loadclass")
+                .adapterJar(jars.get(0))
+                .dependencyJar(jars.get(1))
+                .sharedPackages("java", "dev.modula.util")
+                .build();
+        loader = new ModulaClassLoader(spec, LoadClassBenchmark.class.getClassLoader());
+        moduleClasses = new String[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            moduleClasses[i] = SyntheticJars.className(1, i);
+            loader.loadClass(moduleClasses[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        loader.close();
+        SyntheticJars.delete(dir);
+    }
+
+    /**
+     * A class of the module that has been defined already.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CLASSES)
+    public Class<?> hit() throws ClassNotFoundException {
+        Class<?> last = null;
+        for (String name : moduleClasses) {
+            last = loader.loadClass(name);
+        }
+        return last;
+    }
+
+    /**
+     * A JDK class, which takes the platform fast path whether or not {@code java} is shared.
+     */
+    @Benchmark
+    public Class<?> shared() throws ClassNotFoundException {
+        return loader.loadClass("java.util.function.IntSupplier");
+    }
+
+    /**
+     * A JDK class outside {@code java.*} and outside the shared packages, also sent to the platform loader.
+     */
+    @Benchmark
+    public Class<?> platform() throws ClassNotFoundException {
+        return loader.loadClass("javax.sql.DataSource");
+    }
+
+    /**
+     * An application class in a shared package, delegated to the parent loader.
+     */
+    @Benchmark
+    public Class<?> sharedParent() throws ClassNotFoundException {
+        return loader.loadClass("dev.modula.util.PackageMap");
+    }
+
+    /**
+     * A class that is neither in the module nor shared, e.g. an optional dependency probed by a library.
+     * Every lookup after the first one takes the loader's repeated-miss path.
+     */
+    @Benchmark
+    public Object miss() {
+        try {
+            return loader.loadClass(SyntheticJars.PACKAGE + ".missing.Absent");
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import dev.modula.core.IoEngine;
+import dev.modula.core.ModulaRuntime;
+import dev.modula.core.ModuleSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Measures cold module start-up against the number of JARs on the module path (the adapter JAR
+ * plus at least one dependency): opening and indexing every JAR, then creating one instance of the
+ * module's exported class, which is what the starter does for each eagerly loaded module.
+ *
+ * <p>Each measurement loads a fresh module, so the figures include the page cache being warm
+ * but nothing cached by Modula itself.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = 1)
+@Measurement(iterations = 30, batchSize = 1)
+@Fork(1)
+public class ModuleLoadBenchmark {
+
+    static final int CLASSES_PER_JAR = 200;
+
+    @Param({"2", "10", "50"})
+    int jars;
+
+    @Param({"JAR_FILE", "MAPPED"})
+    IoEngine ioEngine;
+
+    private final ModulaRuntime runtime = new ModulaRuntime();
+    private Path dir;
+    private ModuleSpec spec;
+    private String exported;
+    private ModulaRuntime.IsolatedModule module;
+
+    @Setup(Level.Trial)
+    public void writeJars() throws Exception {
+        dir = Files.createTempDirectory("modula-moduleload");
+        List<Path> paths = SyntheticJars.write(dir, jars, CLASSES_PER_JAR);
+        // The exported class sits in the last JAR, so the index has to cover all of them.
+        exported = SyntheticJars.className(jars - 1, 0);
+        ModuleSpec.Builder builder = ModuleSpec.builder()
+                .name("moduleload")
+                .adapterJar(paths.get(0))
+                .sharedPackages("java")
+                .exportedClasses(exported)
+                .ioEngine(ioEngine);
+        for (Path jar : paths.subList(1, paths.size())) {
+            builder.dependencyJar(jar);
+        }
+        spec = builder.build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeModule() throws Exception {
+        if (module != null) {
+            module.close(0, TimeUnit.MILLISECONDS);
+            module = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJars() throws Exception {
+        SyntheticJars.delete(dir);
+    }
+
+    @Benchmark
+    public int loadModule() {
+        module = runtime.load(spec);
+        return module.getInstance(exported, IntSupplier.class).getAsInt();
+    }
+}
@@ -0,0 +1,154 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates synthetic JARs full of small classes for benchmarks, so results do not depend on
+ * whatever libraries happen to be on the machine.
+ *
+ * <p>Every generated class is public, has a public no-arg constructor and implements
+ * {@link java.util.function.IntSupplier}, whose {@code getAsInt()} returns the class number.
+ * Because {@code java.util.function} is a JDK package, it can be shared with the host so
+ * benchmarks can call into isolated classes through a common interface.</p>
+ */
+public final class SyntheticJars {
+
+    /**
+     * Package of all generated classes.
+     */
+    public static final String PACKAGE = "dev.modula.benchmarks.generated";
+
+    private SyntheticJars() {
+    }
+
+    /**
+     * Returns the fully qualified name of generated class {@code index} in JAR {@code jar}.
+     *
+     * @param jar the JAR number
+     * @param index the class number inside the JAR
+     * @return the class name
+     */
+    public static String className(int jar, int index) {
+        return PACKAGE + ".j" + jar + ".C" + index;
+    }
+
+    /**
+     * Writes {@code jarCount} JARs with {@code classesPerJar} classes each into {@code dir}.
+     *
+     * @param dir the target directory, created if needed
+     * @param jarCount number of JARs to write
+     * @param classesPerJar number of classes in each JAR
+     * @return the JAR paths, in order
+     * @throws IOException if a JAR cannot be written
+     */
+    public static List<Path> write(Path dir, int jarCount, int classesPerJar) throws IOException {
+        Files.createDirectories(dir);
+        List<Path> jars = new ArrayList<>(jarCount);
+        for (int j = 0; j < jarCount; j++) {
+            Path jar = dir.resolve("synthetic-" + j + ".jar");
+            try (OutputStream out = Files.newOutputStream(jar);
+                 JarOutputStream jos = new JarOutputStream(out)) {
+                for (int i = 0; i < classesPerJar; i++) {
+                    String name = className(j, i);
+                    jos.putNextEntry(new JarEntry(name.replace('.', '/') + ".class"));
+                    jos.write(classBytes(name.replace('.', '/'), i));
+                    jos.closeEntry();
+                }
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+
+    /**
+     * Deletes a directory written by {@link #write(Path, int, int)}.
+     *
+     * @param dir the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        Files.walk(dir).forEach(paths::add);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Files.delete(paths.get(i));
+        }
+    }
+
+    /**
+     * Builds a class file (version 52) for {@code internalName}: a public no-arg constructor and
+     * {@code int getAsInt()} returning {@code value}. No method branches, so no StackMapTable is needed.
+     */
+    static byte[] classBytes(String internalName, int value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+
+            // Constant pool
+            out.writeShort(14);
+            utf8(out, internalName);                        // #1
+            out.writeByte(7); out.writeShort(1);            // #2 this class
+            utf8(out, "java/lang/Object");                  // #3
+            out.writeByte(7); out.writeShort(3);            // #4 super class
+            utf8(out, "<init>");                            // #5
+            utf8(out, "()V");                               // #6
+            out.writeByte(12); out.writeShort(5); out.writeShort(6);  // #7 <init>:()V
+            out.writeByte(10); out.writeShort(4); out.writeShort(7);  // #8 Object.<init>
+            utf8(out, "Code");                              // #9
+            utf8(out, "java/util/function/IntSupplier");    // #10
+            out.writeByte(7); out.writeShort(10);           // #11 interface
+            utf8(out, "getAsInt");                          // #12
+            utf8(out, "()I");                               // #13
+
+            out.writeShort(0x0021);  // ACC_PUBLIC | ACC_SUPER
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(1);
+            out.writeShort(11);
+            out.writeShort(0);       // fields
+
+            out.writeShort(2);       // methods
+            // public <init>() { super(); }
+            out.writeShort(0x0001); out.writeShort(5); out.writeShort(6);
+            out.writeShort(1);
+            out.writeShort(9); out.writeInt(12 + 5);
+            out.writeShort(1); out.writeShort(1); out.writeInt(5);
+            out.write(new byte[]{0x2a, (byte) 0xb7, 0x00, 0x08, (byte) 0xb1});
+            out.writeShort(0); out.writeShort(0);
+            // public int getAsInt() { return value; }
+            out.writeShort(0x0001); out.writeShort(12); out.writeShort(13);
+            out.writeShort(1);
+            out.writeShort(9); out.writeInt(12 + 4);
+            out.writeShort(1); out.writeShort(1); out.writeInt(4);
+            out.write(new byte[]{0x11, (byte) (value >> 8), (byte) value, (byte) 0xac});
+            out.writeShort(0); out.writeShort(0);
+
+            out.writeShort(0);       // class attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+}
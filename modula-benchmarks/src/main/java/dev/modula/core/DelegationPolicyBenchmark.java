@@ -0,0 +1,98 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import dev.modula.util.ClassLoaderUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the routing of a class name by the class loader, {@link DelegationPolicy#route(String)}, against
+ * the former linear scan over the normalized shared prefixes, for 5, 50 and 500 shared packages. The
+ * benchmark lives in the loader's package since the policy is internal to it.
+ *
+ * <p>Each invocation routes the same mix of class names: JDK classes, classes in a shared
+ * framework package and module classes that match nothing. Most shared prefixes share their
+ * leading segments (e.g. {@code com.acme.lib7.}), which is the common shape in real
+ * configurations and the worst case for a scan that has to compare each of them.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DelegationPolicyBenchmark {
+
+    private static final String[] CLASS_NAMES = {
+            "java.lang.String",
+            "java.util.concurrent.ConcurrentHashMap",
+            "org.springframework.context.ApplicationContext",
+            "com.acme.lib3.api.Client",
+            "ch.qos.logback.classic.Logger",
+            "org.slf4j.LoggerFactory",
+            "dev.modula.samplemodule.impl.TalkingServiceImpl",
+            "dev.modula.benchmarks.generated.j0.C1",
+    };
+
+    @Param({"5", "50", "500"})
+    int packages;
+
+    private Set<String> prefixes;
+    private DelegationPolicy policy;
+
+    @Setup
+    public void compile() {
+        Set<String> raw = new LinkedHashSet<>();
+        raw.add("java");
+        raw.add("javax");
+        raw.add("org.springframework");
+        for (int i = 0; raw.size() < packages; i++) {
+            raw.add("com.acme.lib" + i);
+        }
+        prefixes = ClassLoaderUtil.normalizeSharedPackages(raw);
+        policy = DelegationPolicy.compile(raw, Collections.<String, DelegationRule>emptyMap());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int linearScan() {
+        int shared = 0;
+        for (String name : CLASS_NAMES) {
+            if (linearScan(prefixes, name)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int route() {
+        int shared = 0;
+        for (String name : CLASS_NAMES) {
+            if (policy.route(name) != DelegationPolicy.Route.MODULE_ONLY) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * The check {@code ModulaClassLoader} used before {@link DelegationPolicy}.
+     */
+    private static boolean linearScan(Set<String> sharedPackages, String className) {
+        int lastDot = className.lastIndexOf('.');
+        String packageName = (lastDot == -1) ? "" : className.substring(0, lastDot) + ".";
+        for (String sharedPkg : sharedPackages) {
+            if (packageName.startsWith(sharedPkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,427 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the calls into one module that run at the same time, so that a module that slows down ties up at
+ * most its own share of the application's threads.
+ *
+ * <p>A call first has to be admitted: at most {@code maxConcurrentCalls} run and {@code maxQueuedCalls} wait,
+ * anything beyond is rejected at once with a {@link BulkheadFullException}. An admitted call then waits up to
+ * {@code maxWait} for a permit, and is rejected if none becomes free. {@link #call(Supplier)} runs on the
+ * caller's thread; {@link #submit(Supplier)} returns at once and runs on the bulkhead's own executor, of
+ * platform threads or, on Java 21+, virtual threads. Both kinds of calls share the same permits.</p>
+ *
+ * <p>Counters are {@link LongAdder}s, like those of {@link ModuleMetrics}; they include the time each call
+ * waited for its permit and the time it ran.</p>
+ */
+public final class Bulkhead implements BulkheadMXBean, AutoCloseable {
+
+    /**
+     * The threads running {@link #submit(Supplier) submitted} calls.
+     */
+    public enum Threads {
+        /**
+         * A pool of {@code maxConcurrentCalls} daemon threads, started on demand and stopped when idle.
+         */
+        PLATFORM,
+
+        /**
+         * A new virtual thread per call; needs Java 21 or later.
+         */
+        VIRTUAL
+    }
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    private final long maxWaitNanos;
+    private final Threads threads;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    /**
+     * Calls admitted and not yet finished, running or waiting.
+     */
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private Bulkhead(Builder builder) {
+        this.name = builder.name;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.maxQueuedCalls = builder.maxQueuedCalls;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.threads = builder.threads;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.executor = threads == Threads.VIRTUAL
+                ? virtualThreadExecutor(name) : platformThreadExecutor(name, maxConcurrentCalls);
+    }
+
+    /**
+     * Creates a new {@link Builder}.
+     *
+     * @param name the name of the module the bulkhead guards, used in messages and thread names
+     * @return a new builder
+     */
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Returns the name of the module the bulkhead guards.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the threads running submitted calls.
+     *
+     * @return the kind of threads
+     */
+    public Threads getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs a call on the caller's thread once it has a permit.
+     *
+     * @param task the call
+     * @param <R> the result type
+     * @return the result of {@code task}
+     * @throws BulkheadFullException if the call is rejected; the thread's interrupt status is kept if it was
+     *         interrupted while waiting
+     */
+    public <R> R call(Supplier<? extends R> task) {
+        long start = enter();
+        try {
+            return task.get();
+        } finally {
+            exit(start);
+        }
+    }
+
+    /**
+     * Admits a call on the caller's thread and takes a permit for it, for calls that cannot be passed as a
+     * {@link Supplier}, e.g. those of a proxy from
+     * {@link ModulaRuntime.IsolatedModule#getProxy(String, Class, InstanceScope, Bulkhead)}. Each successful
+     * {@code enter} must be followed by one {@link #exit(long)}.
+     *
+     * @return the time the call started, for {@link #exit(long)}
+     * @throws BulkheadFullException if the call is rejected; the thread's interrupt status is kept if it was
+     *         interrupted while waiting
+     */
+    public long enter() {
+        admit();
+        try {
+            acquire(System.nanoTime());
+        } catch (BulkheadFullException e) {
+            admitted.decrementAndGet();
+            throw e;
+        }
+        return start();
+    }
+
+    /**
+     * Ends a call admitted by {@link #enter()} and releases its permit.
+     *
+     * @param start what {@link #enter()} returned
+     */
+    public void exit(long start) {
+        executionNanos.add(System.nanoTime() - start);
+        completed.increment();
+        active.decrementAndGet();
+        permits.release();
+        admitted.decrementAndGet();
+    }
+
+    /**
+     * Admits a call and runs it on the bulkhead's executor once it has a permit. The wait for the permit
+     * counts from now.
+     *
+     * @param task the call
+     * @param <R> the result type
+     * @return a future of the result; completed exceptionally with a {@link BulkheadFullException} if the call
+     *         is rejected, or with what {@code task} throws
+     */
+    public <R> CompletableFuture<R> submit(Supplier<? extends R> task) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            admit();
+        } catch (BulkheadFullException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        long submitted = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    acquire(submitted);
+                } catch (BulkheadFullException e) {
+                    admitted.decrementAndGet();
+                    future.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    future.complete(run(task));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            admitted.decrementAndGet();
+            rejected.increment();
+            future.completeExceptionally(new BulkheadFullException("Bulkhead of module '" + name + "' is closed", e));
+        }
+        return future;
+    }
+
+    private void admit() {
+        if (admitted.incrementAndGet() > maxConcurrentCalls + maxQueuedCalls) {
+            admitted.decrementAndGet();
+            rejected.increment();
+            throw new BulkheadFullException("Bulkhead of module '" + name + "' is full: " + maxConcurrentCalls
+                    + " calls running, " + maxQueuedCalls + " waiting");
+        }
+    }
+
+    /**
+     * Takes a permit, waiting at most {@code maxWait} from {@code since}, and records the wait.
+     */
+    private void acquire(long since) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire() || permits.tryAcquire(maxWaitNanos - (System.nanoTime() - since),
+                    TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new BulkheadFullException("Interrupted while waiting for the bulkhead of module '" + name + "'", e);
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new BulkheadFullException("No call of module '" + name + "' finished within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+        }
+        started.increment();
+        queueWaitNanos.add(System.nanoTime() - since);
+    }
+
+    /**
+     * Runs a call holding a permit, then releases it.
+     */
+    private <R> R run(Supplier<? extends R> task) {
+        long start = start();
+        try {
+            return task.get();
+        } finally {
+            exit(start);
+        }
+    }
+
+    private long start() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops the executor; calls already submitted still run, later submissions are rejected.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    @Override
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+
+    @Override
+    public int getActiveCalls() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueuedCalls() {
+        return Math.max(0, admitted.get() - active.get());
+    }
+
+    @Override
+    public long getStartedCalls() {
+        return started.sum();
+    }
+
+    @Override
+    public long getQueueWaitTimeNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    @Override
+    public long getCompletedCalls() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getExecutionTimeNanos() {
+        return executionNanos.sum();
+    }
+
+    @Override
+    public long getRejectedCalls() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the JMX name of a module's bulkhead: {@code dev.modula:type=Bulkhead,name=<module>}.
+     *
+     * @param moduleName the module name
+     * @return the object name
+     */
+    public static ObjectName objectName(String moduleName) {
+        try {
+            return new ObjectName(ModuleMetrics.JMX_DOMAIN + ":type=Bulkhead,name=" + ObjectName.quote(moduleName));
+        } catch (MalformedObjectNameException e) {
+            // cannot happen: the name is quoted
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static ExecutorService platformThreadExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "modula-" + name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // Admission bounds the queue.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a virtual thread per task executor through reflection, since the code compiles for Java 8.
+     */
+    private static ExecutorService virtualThreadExecutor(String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "modula-" + name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, bulkhead of module '"
+                    + name + "'", e);
+        }
+    }
+
+    /**
+     * A builder of {@link Bulkhead}s.
+     */
+    public static final class Builder {
+        private final String name;
+        private int maxConcurrentCalls = 25;
+        private int maxQueuedCalls;
+        private long maxWaitNanos;
+        private Threads threads = Threads.PLATFORM;
+
+        private Builder(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+        }
+
+        /**
+         * Sets how many calls may run at the same time. Defaults to 25.
+         *
+         * @param maxConcurrentCalls the limit, at least 1
+         * @return this builder instance
+         */
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            if (maxConcurrentCalls < 1) {
+                throw new IllegalArgumentException("maxConcurrentCalls must be at least 1: " + maxConcurrentCalls);
+            }
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        /**
+         * Sets how many calls may wait for a permit. Defaults to 0: a call is rejected unless a permit is free.
+         *
+         * @param maxQueuedCalls the limit, at least 0
+         * @return this builder instance
+         */
+        public Builder maxQueuedCalls(int maxQueuedCalls) {
+            if (maxQueuedCalls < 0) {
+                throw new IllegalArgumentException("maxQueuedCalls must not be negative: " + maxQueuedCalls);
+            }
+            this.maxQueuedCalls = maxQueuedCalls;
+            return this;
+        }
+
+        /**
+         * Sets how long a queued call waits for a permit before it is rejected. Defaults to 0.
+         *
+         * @param maxWait the longest wait
+         * @param unit the unit of {@code maxWait}
+         * @return this builder instance
+         */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        /**
+         * Sets the threads running submitted calls. Defaults to {@link Threads#PLATFORM}.
+         *
+         * @param threads the kind of threads
+         * @return this builder instance
+         */
+        public Builder threads(Threads threads) {
+            this.threads = Objects.requireNonNull(threads, "threads");
+            return this;
+        }
+
+        /**
+         * Builds the bulkhead.
+         *
+         * @return the bulkhead
+         * @throws UnsupportedOperationException if virtual threads are asked for before Java 21
+         */
+        public Bulkhead build() {
+            return new Bulkhead(this);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a {@link Bulkhead} turns a call away: its queue is full, or no permit became free in time.
+ */
+public class BulkheadFullException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception.
+     *
+     * @param message the detail message
+     */
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+
+    /**
+     * Creates an exception with a cause, e.g. the interruption of a waiting caller.
+     *
+     * @param message the detail message
+     * @param cause the cause
+     */
+    public BulkheadFullException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,56 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * The statistics of one {@link Bulkhead}, as exposed over JMX. Counts and times are cumulative since the
+ * bulkhead was created.
+ */
+public interface BulkheadMXBean {
+
+    /**
+     * @return the number of calls that may run at the same time
+     */
+    int getMaxConcurrentCalls();
+
+    /**
+     * @return the number of calls that may wait for a permit while the maximum number is running
+     */
+    int getMaxQueuedCalls();
+
+    /**
+     * @return the number of calls running now
+     */
+    int getActiveCalls();
+
+    /**
+     * @return the number of calls admitted and waiting for a permit now, including submitted ones not yet started
+     */
+    int getQueuedCalls();
+
+    /**
+     * @return the number of calls that got a permit and started
+     */
+    long getStartedCalls();
+
+    /**
+     * @return the time started calls waited for their permit, from the call or submission, in nanoseconds
+     */
+    long getQueueWaitTimeNanos();
+
+    /**
+     * @return the number of started calls that returned or threw
+     */
+    long getCompletedCalls();
+
+    /**
+     * @return the time completed calls ran, in nanoseconds
+     */
+    long getExecutionTimeNanos();
+
+    /**
+     * @return the number of calls rejected because the queue was full, the wait timed out or the caller was
+     *         interrupted
+     */
+    long getRejectedCalls();
+}
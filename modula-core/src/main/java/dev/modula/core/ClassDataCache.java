@@ -0,0 +1,252 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A per-module cache of the class files a module actually loads, recorded by a training run and
+ * restored by later starts.
+ *
+ * <p>In {@link Mode#RECORD} mode, each {@link ModulaClassLoader} remembers the classes it defines. When
+ * the loader is closed (the starter closes every module on shutdown), it links those classes and writes
+ * their bytes to {@code <dir>/<module>.classes}. In {@link Mode#RESTORE} mode, a loader maps that file and
+ * defines the recorded classes straight from it, without looking them up in, reading or inflating their
+ * JARs. The file is keyed by the length and CRC-32 of every JAR on the module path, or for a module bundle by
+ * the hashes in its index (see {@link ModuleBundle}); if any JAR changed, or the file is missing or
+ * unreadable, the module silently loads from its JARs as usual.</p>
+ *
+ * <p>The JDK's class data sharing only archives classes of custom loaders through a dynamic archive,
+ * and only classes that were linked during the dumping run. Running the training run with
+ * {@code -XX:ArchiveClassesAtExit=app.jsa} therefore archives every recorded class, and later starts
+ * with {@code -XX:SharedArchiveFile=app.jsa} also skip parsing and verifying them: the JVM matches
+ * the bytes handed to {@code defineClass} against the archive.</p>
+ *
+ * <p>Modules whose path contains an exploded directory are never cached.</p>
+ */
+public final class ClassDataCache {
+
+    private static final int MAGIC = 0x4D434443; // "MCDC"
+    private static final int VERSION = 1;
+
+    /**
+     * Whether a run records the classes of its modules or restores them.
+     */
+    public enum Mode {
+        /**
+         * Training run: record the classes each module loads and write them when the module is closed.
+         */
+        RECORD,
+        /**
+         * Define recorded classes from the cache when it matches the module's JARs.
+         */
+        RESTORE
+    }
+
+    private final Path dir;
+    private final Mode mode;
+
+    /**
+     * Creates a cache stored in {@code dir}.
+     *
+     * @param dir the directory holding one cache file per module; created when the first file is written
+     * @param mode whether to record or restore
+     */
+    public ClassDataCache(Path dir, Mode mode) {
+        this.dir = dir;
+        this.mode = mode;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the cache file of a module.
+     *
+     * @param moduleName the module name
+     * @return the cache file path
+     */
+    public Path fileOf(String moduleName) {
+        return dir.resolve(moduleName.replaceAll("[^A-Za-z0-9._-]", "_") + ".classes");
+    }
+
+    /**
+     * Computes the key of a module path: the length and CRC-32 of each source file, in order.
+     *
+     * @param checksums checksums already known, e.g. from the index of a module bundle, used instead of
+     *        reading those files
+     * @return the key, or {@code null} if a source is not a file (e.g. an exploded directory)
+     */
+    static long[] keyOf(List<Path> files, Map<Path, Long> checksums) throws IOException {
+        long[] key = new long[files.size() * 2];
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            Long checksum = checksums.get(file);
+            if (checksum != null) {
+                key[2 * i] = Files.size(file);
+                key[2 * i + 1] = checksum;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                CRC32 crc = new CRC32();
+                long size = channel.size();
+                for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Integer.MAX_VALUE, size - pos)));
+                }
+                key[2 * i] = size;
+                key[2 * i + 1] = crc.getValue();
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Reads a module's cache file.
+     *
+     * @return the cached classes by name, or {@code null} if there is no usable file for this key
+     */
+    Map<String, Cached> read(String moduleName, long[] key) {
+        Path file = fileOf(moduleName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer map;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                map = mapped;
+            }
+            if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getInt() != key.length) {
+                return null;
+            }
+            for (long k : key) {
+                if (map.getLong() != k) {
+                    return null;
+                }
+            }
+            int count = map.getInt();
+            Map<String, Cached> classes = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[map.getShort() & 0xFFFF];
+                map.get(name);
+                int source = map.getShort() & 0xFFFF;
+                int length = map.getInt();
+                ByteBuffer bytes = map.duplicate();
+                bytes.limit(bytes.position() + length);
+                map.position(map.position() + length);
+                classes.put(new String(name, StandardCharsets.UTF_8), new Cached(source, bytes.slice().asReadOnlyBuffer()));
+            }
+            return classes;
+        } catch (IOException | RuntimeException e) {
+            // A truncated or foreign file is just a cache miss; the next training run rewrites it.
+            return null;
+        }
+    }
+
+    /**
+     * Writes a module's cache file, replacing the previous one atomically where the file system allows.
+     *
+     * @param classes the classes to write, in definition order
+     */
+    void write(String moduleName, long[] key, List<Recorded> classes) throws IOException {
+        Files.createDirectories(dir);
+        Path file = fileOf(moduleName);
+        Path tmp = dir.resolve(file.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(key.length);
+                for (long k : key) {
+                    out.writeLong(k);
+                }
+                out.writeInt(classes.size());
+                byte[] buf = new byte[0];
+                for (Recorded r : classes) {
+                    byte[] name = r.name.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeShort(r.source);
+                    ByteBuffer bytes = r.transformed != null ? ByteBuffer.wrap(r.transformed) : r.entry.read();
+                    int n = bytes.remaining();
+                    out.writeInt(n);
+                    if (bytes.hasArray()) {
+                        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), n);
+                    } else {
+                        if (buf.length < n) {
+                            buf = new byte[n];
+                        }
+                        bytes.get(buf, 0, n);
+                        out.write(buf, 0, n);
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * A class restored from a cache file: the index of the source it was recorded from, and its bytes.
+     */
+    static final class Cached {
+        final int source;
+        final ByteBuffer bytes;
+
+        Cached(int source, ByteBuffer bytes) {
+            this.source = source;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A class recorded during a training run; unless it was transformed, its bytes are read again from the
+     * entry when the cache is written.
+     */
+    static final class Recorded {
+        final String name;
+        final int source;
+        final ClassSource.Entry entry;
+        /**
+         * The bytes defined after the module's transformers, or {@code null} if they left the class unchanged.
+         */
+        final byte[] transformed;
+
+        Recorded(String name, int source, ClassSource.Entry entry, byte[] transformed) {
+            this.name = name;
+            this.source = source;
+            this.entry = entry;
+            this.transformed = transformed;
+        }
+    }
+}
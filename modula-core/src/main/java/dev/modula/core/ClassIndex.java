@@ -0,0 +1,89 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index from fully qualified class name to the source entry that defines it,
+ * built once over all {@link ClassSource}s of a module.
+ *
+ * <p>Sources are indexed in module path order: the adapter JAR first, then the dependency JARs
+ * in the order they were declared. The first source that contains a class wins; the same class
+ * in any later source is shadowed and never read. A lookup is a single hash probe, regardless of
+ * how many JARs the module has.</p>
+ */
+final class ClassIndex {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * Entries that are never loaded as classes by name.
+     */
+    private static final String MODULE_INFO = "module-info.class";
+    private static final String VERSIONED_PREFIX = "META-INF/versions/";
+
+    private final Map<String, ClassSource.Entry> entries;
+
+    private ClassIndex(Map<String, ClassSource.Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Builds the index from the entry lists of the given sources.
+     *
+     * @param sources the module's sources in module path order
+     * @return the class index
+     */
+    static ClassIndex build(List<ClassSource> sources) {
+        int expected = 0;
+        for (ClassSource source : sources) {
+            expected += source.entries().size();
+        }
+        Map<String, ClassSource.Entry> entries = new HashMap<>(Math.max(16, (int) (expected / 0.75f) + 1));
+        for (ClassSource source : sources) {
+            for (ClassSource.Entry entry : source.entries()) {
+                String className = toClassName(entry.getName());
+                if (className != null) {
+                    // First source wins: never replace a class found in an earlier one.
+                    entries.putIfAbsent(className, entry);
+                }
+            }
+        }
+        return new ClassIndex(entries);
+    }
+
+    /**
+     * Returns the entry of the given class, or {@code null} if no source of the module contains it.
+     *
+     * @param className the fully qualified class name
+     * @return the class file entry, or {@code null}
+     */
+    ClassSource.Entry get(String className) {
+        return entries.get(className);
+    }
+
+    /**
+     * Returns the number of indexed classes.
+     *
+     * @return the number of classes
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Converts an entry name such as {@code a/b/C.class} to {@code a.b.C}.
+     *
+     * @return the class name, or {@code null} if the entry is not a loadable class
+     */
+    static String toClassName(String path) {
+        if (!path.endsWith(CLASS_SUFFIX)
+                || path.equals(MODULE_INFO) || path.startsWith(VERSIONED_PREFIX)) {
+            return null;
+        }
+        return path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+}
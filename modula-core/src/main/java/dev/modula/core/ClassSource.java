@@ -0,0 +1,118 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * A container of class files and resources on the module path.
+ *
+ * <p>The built-in sources are JAR files (read with either {@link IoEngine}), exploded class
+ * directories, and JARs nested inside a module archive, which are read in place without
+ * extracting them. The entries of a source are listed once when it is opened, and the module's
+ * class index is built from those lists, so a source never has to be searched by name; reads go
+ * through {@link Entry#read()} whatever the kind of source.</p>
+ */
+interface ClassSource extends Closeable {
+
+    /**
+     * Returns the location of this source, used as the {@link CodeSource} of its classes.
+     *
+     * @return the location URL
+     */
+    URL getLocation();
+
+    /**
+     * Returns the code source of the classes defined from this source.
+     *
+     * @return the code source
+     */
+    CodeSource getCodeSource();
+
+    /**
+     * Returns every file entry of this source (directories excluded), in archive order.
+     *
+     * @return an unmodifiable list of entries
+     */
+    List<Entry> entries();
+
+    /**
+     * A single file inside a {@link ClassSource}.
+     */
+    abstract class Entry {
+
+        private final String name;
+
+        protected Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the entry path inside the source, e.g. {@code a/b/C.class}.
+         *
+         * @return the entry name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the source containing this entry.
+         *
+         * @return the owning source
+         */
+        public abstract ClassSource getSource();
+
+        /**
+         * Reads the full content of the entry. The returned buffer is positioned at 0 and its
+         * remaining bytes are exactly the entry content; it may be a read-only view that must
+         * not be retained after the source is closed.
+         *
+         * @return the entry content
+         * @throws IOException if the entry cannot be read
+         */
+        public abstract ByteBuffer read() throws IOException;
+
+        /**
+         * Opens a stream over the content of the entry, for resources that are consumed once. Sources
+         * override this to stream without reading the whole entry into memory first.
+         *
+         * @return a new stream positioned at the start of the entry
+         * @throws IOException if the entry cannot be read
+         */
+        public InputStream openStream() throws IOException {
+            return new ByteBufferInputStream(read());
+        }
+    }
+
+    /**
+     * Opens a JAR with the given I/O engine, or an exploded class directory if the path is a directory.
+     *
+     * @param path the JAR or directory path
+     * @param engine the engine to read a JAR with; ignored for directories
+     * @return the opened source
+     * @throws IOException if the JAR or directory cannot be opened
+     */
+    static ClassSource open(Path path, IoEngine engine) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryClassSource(path);
+        }
+        if (engine == IoEngine.MAPPED) {
+            try {
+                return new MappedJarClassSource(path);
+            } catch (ZipException e) {
+                // e.g. ZIP64: let JarFile deal with it, it reports real corruption on its own
+            }
+        }
+        return new JarFileClassSource(path);
+    }
+}
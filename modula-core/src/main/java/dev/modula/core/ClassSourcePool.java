@@ -0,0 +1,146 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The open JAR files of a {@link ModulaRuntime}, shared by all of its module class loaders.
+ *
+ * <p>A JAR listed by several modules, or by the old and the new version of a reloaded module, is opened
+ * and its central directory parsed once; every loader then builds its own {@link ClassIndex} from the
+ * same entry list. Each handle is reference counted and closed when the last loader using it is closed.
+ * A handle is keyed by the JAR's path, I/O engine, size and modification time, so a JAR replaced on disk
+ * is opened afresh while loaders of the old file keep reading the old handle.</p>
+ *
+ * <p>Only JAR files are pooled; exploded directories and module archives are opened by each loader.
+ * Opening happens outside any pool-wide lock, so modules loaded in parallel open different JARs
+ * concurrently.</p>
+ */
+final class ClassSourcePool {
+
+    private final ConcurrentMap<Key, Handle> handles = new ConcurrentHashMap<>();
+
+    /**
+     * Handles by their source, to release them; sources use identity equality.
+     */
+    private final ConcurrentMap<ClassSource, Handle> bySource = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a JAR, or returns the handle another loader already opened, counting one more user.
+     *
+     * @param path the JAR path; directories are opened unpooled
+     * @param engine the engine to read the JAR with
+     * @return the source, to be handed back with {@link #release(ClassSource)}
+     * @throws IOException if the JAR cannot be opened
+     */
+    ClassSource acquire(Path path, IoEngine engine) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return ClassSource.open(path, engine);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Key key = new Key(path.toAbsolutePath().normalize(), engine, attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+        while (true) {
+            Handle handle = handles.computeIfAbsent(key, Handle::new);
+            synchronized (handle) {
+                if (handle.closed) {
+                    // released by its last user just now; retry with a fresh handle
+                    continue;
+                }
+                if (handle.source == null) {
+                    try {
+                        handle.source = ClassSource.open(path, engine);
+                    } catch (IOException | RuntimeException e) {
+                        handle.closed = true;
+                        handles.remove(key, handle);
+                        throw e;
+                    }
+                    bySource.put(handle.source, handle);
+                }
+                handle.users++;
+                return handle.source;
+            }
+        }
+    }
+
+    /**
+     * Hands back a source, closing it if it was pooled and this was its last user or if it was not pooled.
+     *
+     * @param source a source returned by {@link #acquire}
+     * @throws IOException if the source cannot be closed
+     */
+    void release(ClassSource source) throws IOException {
+        Handle handle = bySource.get(source);
+        if (handle != null) {
+            synchronized (handle) {
+                if (--handle.users > 0) {
+                    return;
+                }
+                handle.closed = true;
+                handles.remove(handle.key, handle);
+                bySource.remove(source);
+            }
+        }
+        source.close();
+    }
+
+    /**
+     * Returns the number of JARs currently held open by the pool.
+     *
+     * @return the number of pooled handles
+     */
+    int size() {
+        return bySource.size();
+    }
+
+    private static final class Handle {
+        final Key key;
+        /**
+         * The open source; {@code null} until the first user opened it. Guarded by the handle.
+         */
+        ClassSource source;
+        int users;
+        boolean closed;
+
+        Handle(Key key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        final Path path;
+        final IoEngine engine;
+        final long size;
+        final long modified;
+
+        Key(Path path, IoEngine engine, long size, long modified) {
+            this.path = path;
+            this.engine = engine;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && engine == other.engine && size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = path.hashCode();
+            h = 31 * h + engine.hashCode();
+            h = 31 * h + Long.hashCode(size);
+            return 31 * h + Long.hashCode(modified);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * Rewrites the class files of one module before they are defined, e.g. to add profiling probes or to
+ * strip debug attributes; see {@link ModuleSpec.Builder#transformer(ClassTransformer)}.
+ *
+ * <p>Unlike a {@code -javaagent}, a transformer only sees the classes its module defines from its own
+ * JARs: not those of the host application, of shared packages or of shared libraries.</p>
+ *
+ * <p>Implementations must be thread-safe, since a module loads classes in parallel, and deterministic:
+ * with a transform cache, the output for a given input is computed once and reused on later starts.
+ * Anything that changes the output for the same input must change {@link #getCacheId()}.</p>
+ */
+@FunctionalInterface
+public interface ClassTransformer {
+
+    /**
+     * Transforms a class file.
+     *
+     * @param className the fully qualified class name
+     * @param classFile the class file bytes; must not be modified
+     * @return the transformed class file, or {@code null} to leave the class unchanged
+     * @throws Exception if the class cannot be transformed; the class then fails to load
+     */
+    byte[] transform(String className, byte[] classFile) throws Exception;
+
+    /**
+     * Identifies this transformer and its configuration in the transform cache key.
+     *
+     * @return the cache id; by default the implementation class name
+     */
+    default String getCacheId() {
+        return getClass().getName();
+    }
+}
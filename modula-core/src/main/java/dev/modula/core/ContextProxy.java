@@ -0,0 +1,546 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Proxies of module objects that make the module's class loader the thread context class loader for each call,
+ * see {@link ModulaRuntime.IsolatedModule#getProxy(String, Class, InstanceScope)}.
+ *
+ * <p>Unlike a {@link java.lang.reflect.Proxy}, which boxes the arguments and dispatches through an
+ * {@code InvocationHandler} and {@link Method#invoke}, the proxy class of an interface is generated as bytecode:
+ * each method saves the caller's context class loader, sets the module's, calls the target with a plain
+ * {@code invokeinterface} and restores the saved loader in a {@code finally} block. The JIT compiles that like
+ * hand-written code, so a call costs the two context class loader writes on top of the call itself.</p>
+ *
+ * <p>A guarded proxy also holds a {@link Bulkhead}: each method enters it before switching the context class
+ * loader and exits it in the same {@code finally} block, so a call the bulkhead rejects never reaches the
+ * target.</p>
+ *
+ * <p>The class is written as a version 49 class file, which the JVM verifies without stack map frames, and
+ * defined once per interface by a class loader of its own whose parent is the interface's loader; it is
+ * referenced from the interface only through a {@link ClassValue}, so it goes away with the interface.</p>
+ */
+final class ContextProxy {
+
+    private static final String PROXY_PACKAGE = "dev/modula/proxy/";
+    private static final String THREAD = "java/lang/Thread";
+    private static final String CLASS_LOADER = "java/lang/ClassLoader";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String BULKHEAD = "dev/modula/core/Bulkhead";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    /**
+     * The constructor of each interface's proxy class, as {@code (Object target, ClassLoader loader)Object}.
+     */
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> interfaceType) {
+            return generate(interfaceType, false);
+        }
+    };
+
+    /**
+     * The constructor of each interface's guarded proxy class, as
+     * {@code (Object target, ClassLoader loader, Bulkhead bulkhead)Object}.
+     */
+    private static final ClassValue<MethodHandle> GUARDED_CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> interfaceType) {
+            return generate(interfaceType, true);
+        }
+    };
+
+    private ContextProxy() {
+    }
+
+    /**
+     * Wraps an object so that every call of an interface method runs with {@code loader} as the thread context
+     * class loader.
+     *
+     * @param interfaceType the interface to proxy; public, and visible from its own class loader
+     * @param target the object to call
+     * @param loader the context class loader for the calls
+     * @param <T> the type of the interface
+     * @return the proxy
+     * @throws IllegalArgumentException if {@code interfaceType} is not a public interface
+     */
+    static <T> T create(Class<T> interfaceType, T target, ClassLoader loader) {
+        return create(interfaceType, target, loader, null);
+    }
+
+    /**
+     * Same as {@link #create(Class, Object, ClassLoader)}, with every call also admitted by {@code bulkhead}.
+     *
+     * @param interfaceType the interface to proxy; public, and visible from its own class loader
+     * @param target the object to call
+     * @param loader the context class loader for the calls
+     * @param bulkhead the bulkhead each call enters, or {@code null} for none
+     * @param <T> the type of the interface
+     * @return the proxy
+     * @throws IllegalArgumentException if {@code interfaceType} is not a public interface
+     */
+    static <T> T create(Class<T> interfaceType, T target, ClassLoader loader, Bulkhead bulkhead) {
+        if (!interfaceType.isInterface() || !Modifier.isPublic(interfaceType.getModifiers())) {
+            throw new IllegalArgumentException("Not a public interface: " + interfaceType.getName());
+        }
+        try {
+            Object proxy = bulkhead == null
+                    ? (Object) CONSTRUCTORS.get(interfaceType).invokeExact((Object) target, loader)
+                    : (Object) GUARDED_CONSTRUCTORS.get(interfaceType).invokeExact((Object) target, loader, bulkhead);
+            return interfaceType.cast(proxy);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to create proxy of " + interfaceType.getName(), e);
+        }
+    }
+
+    private static MethodHandle generate(Class<?> interfaceType, boolean guarded) {
+        String name = PROXY_PACKAGE + internalName(interfaceType) + (guarded ? "$ModulaGuardedProxy" : "$ModulaProxy");
+        byte[] classFile;
+        try {
+            classFile = classFile(name, interfaceType, guarded);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to generate proxy of " + interfaceType.getName(), e);
+        }
+        Class<?> proxyClass = new ProxyClassLoader(interfaceType.getClassLoader())
+                .define(name.replace('/', '.'), classFile);
+        if (proxyClass.getInterfaces()[0] != interfaceType) {
+            throw new IllegalArgumentException("Interface not visible from its own class loader: "
+                    + interfaceType.getName());
+        }
+        MethodType type = guarded
+                ? MethodType.methodType(Object.class, Object.class, ClassLoader.class, Bulkhead.class)
+                : MethodType.methodType(Object.class, Object.class, ClassLoader.class);
+        try {
+            return MethodHandles.publicLookup()
+                    .findConstructor(proxyClass, type.changeReturnType(void.class))
+                    .asType(type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to generate proxy of " + interfaceType.getName(), e);
+        }
+    }
+
+    /**
+     * Writes the proxy class: final fields {@code target}, {@code loader} and, if guarded, {@code bulkhead}, a
+     * constructor setting them, and one forwarding method per distinct name and descriptor among the interface's
+     * non-static methods.
+     */
+    private static byte[] classFile(String name, Class<?> interfaceType, boolean guarded) throws IOException {
+        String iface = internalName(interfaceType);
+        String ifaceDescriptor = "L" + iface + ";";
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(name);
+        int superClass = pool.classRef(OBJECT);
+        int ifaceClass = pool.classRef(iface);
+        int targetField = pool.memberRef(9, name, "target", ifaceDescriptor);
+        int loaderField = pool.memberRef(9, name, "loader", "L" + CLASS_LOADER + ";");
+        int currentThread = pool.memberRef(10, THREAD, "currentThread", "()L" + THREAD + ";");
+        int getContext = pool.memberRef(10, THREAD, "getContextClassLoader", "()L" + CLASS_LOADER + ";");
+        int setContext = pool.memberRef(10, THREAD, "setContextClassLoader", "(L" + CLASS_LOADER + ";)V");
+        int objectInit = pool.memberRef(10, OBJECT, "<init>", "()V");
+        int code = pool.utf8("Code");
+        List<int[]> fields = new ArrayList<>();
+        fields.add(new int[]{pool.utf8("target"), pool.utf8(ifaceDescriptor)});
+        fields.add(new int[]{pool.utf8("loader"), pool.utf8("L" + CLASS_LOADER + ";")});
+        Guard guard = null;
+        String constructorDescriptor = "(L" + OBJECT + ";L" + CLASS_LOADER + ";)V";
+        if (guarded) {
+            guard = new Guard(pool.memberRef(9, name, "bulkhead", "L" + BULKHEAD + ";"),
+                    pool.memberRef(10, BULKHEAD, "enter", "()J"),
+                    pool.memberRef(10, BULKHEAD, "exit", "(J)V"));
+            fields.add(new int[]{pool.utf8("bulkhead"), pool.utf8("L" + BULKHEAD + ";")});
+            constructorDescriptor = "(L" + OBJECT + ";L" + CLASS_LOADER + ";L" + BULKHEAD + ";)V";
+        }
+
+        // Every constant is added before the pool is written below.
+        List<byte[]> methods = new ArrayList<>();
+        methods.add(method(pool, "<init>", constructorDescriptor, code,
+                constructor(objectInit, ifaceClass, targetField, loaderField, guard), 2, guarded ? 4 : 3, 0, 0, 0));
+        Map<String, Method> forwarded = new LinkedHashMap<>();
+        for (Method m : interfaceType.getMethods()) {
+            if (!Modifier.isStatic(m.getModifiers())) {
+                forwarded.put(m.getName() + methodDescriptor(m), m);
+            }
+        }
+        for (Method m : forwarded.values()) {
+            String descriptor = methodDescriptor(m);
+            int callee = pool.memberRef(11, iface, m.getName(), descriptor);
+            methods.add(forwarder(pool, m, descriptor, code, callee, targetField, loaderField,
+                    currentThread, getContext, setContext, guard));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        pool.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(ifaceClass);
+        out.writeShort(fields.size());
+        for (int[] field : fields) {
+            out.writeShort(ACC_PRIVATE | ACC_FINAL);
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(0);
+        }
+        out.writeShort(methods.size());
+        for (byte[] method : methods) {
+            out.write(method);
+        }
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] constructor(int objectInit, int ifaceClass, int targetField, int loaderField, Guard guard) {
+        Bytecode c = new Bytecode();
+        c.op(0x2A);                                 // aload_0
+        c.op(0xB7).u2(objectInit);                  // invokespecial Object.<init>
+        c.op(0x2A);                                 // aload_0
+        c.op(0x2B);                                 // aload_1
+        c.op(0xC0).u2(ifaceClass);                  // checkcast
+        c.op(0xB5).u2(targetField);                 // putfield target
+        c.op(0x2A);                                 // aload_0
+        c.op(0x2C);                                 // aload_2
+        c.op(0xB5).u2(loaderField);                 // putfield loader
+        if (guard != null) {
+            c.op(0x2A);                             // aload_0
+            c.op(0x2D);                             // aload_3
+            c.op(0xB5).u2(guard.bulkheadField);     // putfield bulkhead
+        }
+        c.op(0xB1);                                 // return
+        return c.toByteArray();
+    }
+
+    /**
+     * Writes a forwarding method:
+     * <pre>
+     * long start = bulkhead.enter();          // guarded only
+     * Thread t = Thread.currentThread();
+     * ClassLoader saved = t.getContextClassLoader();
+     * try {
+     *     t.setContextClassLoader(loader);
+     *     return target.m(args);
+     * } finally {
+     *     t.setContextClassLoader(saved);
+     *     bulkhead.exit(start);               // guarded only
+     * }
+     * </pre>
+     * The result stays on the operand stack while the saved loader is restored.
+     */
+    private static byte[] forwarder(ConstantPool pool, Method m, String descriptor, int code, int callee,
+                                    int targetField, int loaderField, int currentThread, int getContext,
+                                    int setContext, Guard guard) throws IOException {
+        Class<?>[] params = m.getParameterTypes();
+        int argSlots = 0;
+        for (Class<?> param : params) {
+            argSlots += slots(param);
+        }
+        int start = 1 + argSlots;
+        int thread = guard != null ? start + 2 : start;
+        int saved = thread + 1;
+        int thrown = saved + 1;
+        Bytecode c = new Bytecode();
+        if (guard != null) {
+            c.op(0x2A);                             // aload_0
+            c.op(0xB4).u2(guard.bulkheadField);     // getfield bulkhead
+            c.op(0xB6).u2(guard.enter);             // invokevirtual enter
+            c.local(0x37, start);                   // lstore start
+        }
+        c.op(0xB8).u2(currentThread);               // invokestatic Thread.currentThread
+        c.local(0x3A, thread);                      // astore t
+        c.local(0x19, thread);                      // aload t
+        c.op(0xB6).u2(getContext);                  // invokevirtual getContextClassLoader
+        c.local(0x3A, saved);                       // astore saved
+        int tryStart = c.length();
+        c.local(0x19, thread);                      // aload t
+        c.op(0x2A);                                 // aload_0
+        c.op(0xB4).u2(loaderField);                 // getfield loader
+        c.op(0xB6).u2(setContext);                  // invokevirtual setContextClassLoader
+        c.op(0x2A);                                 // aload_0
+        c.op(0xB4).u2(targetField);                 // getfield target
+        int slot = 1;
+        for (Class<?> param : params) {
+            c.local(loadOpcode(param), slot);
+            slot += slots(param);
+        }
+        c.op(0xB9).u2(callee).u1(1 + argSlots).u1(0); // invokeinterface
+        int tryEnd = c.length();
+        c.local(0x19, thread);                      // aload t
+        c.local(0x19, saved);                       // aload saved
+        c.op(0xB6).u2(setContext);                  // invokevirtual setContextClassLoader
+        exit(c, guard, start);
+        c.op(returnOpcode(m.getReturnType()));
+        int handler = c.length();
+        c.local(0x3A, thrown);                      // astore thrown
+        c.local(0x19, thread);                      // aload t
+        c.local(0x19, saved);                       // aload saved
+        c.op(0xB6).u2(setContext);                  // invokevirtual setContextClassLoader
+        exit(c, guard, start);
+        c.local(0x19, thrown);                      // aload thrown
+        c.op(0xBF);                                 // athrow
+        int maxStack = Math.max(3, Math.max(1 + argSlots, slots(m.getReturnType()) + (guard != null ? 3 : 2)));
+        return method(pool, m.getName(), descriptor, code, c.toByteArray(), maxStack, thrown + 1,
+                tryStart, tryEnd, handler);
+    }
+
+    private static void exit(Bytecode c, Guard guard, int start) {
+        if (guard != null) {
+            c.op(0x2A);                             // aload_0
+            c.op(0xB4).u2(guard.bulkheadField);     // getfield bulkhead
+            c.local(0x16, start);                   // lload start
+            c.op(0xB6).u2(guard.exit);              // invokevirtual exit
+        }
+    }
+
+    private static byte[] method(ConstantPool pool, String name, String descriptor, int code, byte[] bytecode,
+                                 int maxStack, int maxLocals, int tryStart, int tryEnd, int handler)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean hasHandler = tryEnd > tryStart;
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(code);
+        out.writeInt(12 + bytecode.length + (hasHandler ? 8 : 0));
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(hasHandler ? 1 : 0);
+        if (hasHandler) {
+            out.writeShort(tryStart);
+            out.writeShort(tryEnd);
+            out.writeShort(handler);
+            out.writeShort(0);                      // any throwable
+        }
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int slots(Class<?> type) {
+        return type == void.class ? 0 : type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private static int loadOpcode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return 0x19;                            // aload
+        }
+        return type == long.class ? 0x16 : type == float.class ? 0x17 : type == double.class ? 0x18 : 0x15;
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) {
+            return 0xB1;
+        }
+        if (!type.isPrimitive()) {
+            return 0xB0;                            // areturn
+        }
+        return type == long.class ? 0xAD : type == float.class ? 0xAE : type == double.class ? 0xAF : 0xAC;
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static String methodDescriptor(Method m) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> param : m.getParameterTypes()) {
+            sb.append(descriptor(param));
+        }
+        return sb.append(')').append(descriptor(m.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return internalName(type);
+        }
+        if (!type.isPrimitive()) {
+            return "L" + internalName(type) + ";";
+        }
+        if (type == void.class) return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == float.class) return "F";
+        return "D";
+    }
+
+    /**
+     * The constant pool entries a guarded proxy uses to enter and exit its bulkhead.
+     */
+    private static final class Guard {
+        final int bulkheadField;
+        final int enter;
+        final int exit;
+
+        Guard(int bulkheadField, int enter, int exit) {
+            this.bulkheadField = bulkheadField;
+            this.enter = enter;
+            this.exit = exit;
+        }
+    }
+
+    /**
+     * The constant pool of the generated class, each entry added once.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = indexes.get("U" + value);
+            if (index == null) {
+                out.writeByte(1);
+                out.writeUTF(value);
+                index = add("U" + value);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            Integer index = indexes.get("C" + internalName);
+            if (index == null) {
+                int nameIndex = utf8(internalName);
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+                index = add("C" + internalName);
+            }
+            return index;
+        }
+
+        /**
+         * Adds a field (9), method (10) or interface method (11) reference.
+         */
+        int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = indexes.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                Integer nameAndType = indexes.get("N" + name + descriptor);
+                if (nameAndType == null) {
+                    out.writeByte(12);
+                    out.writeShort(nameIndex);
+                    out.writeShort(descriptorIndex);
+                    nameAndType = add("N" + name + descriptor);
+                }
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) {
+            int index = count++;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+    }
+
+    /**
+     * The code array of a method.
+     */
+    private static final class Bytecode {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Bytecode op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Bytecode u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Bytecode u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        /**
+         * Writes a load or store of a local variable, {@code wide} if its slot does not fit in a byte.
+         */
+        Bytecode local(int opcode, int slot) {
+            if (slot > 0xFF) {
+                return op(0xC4).op(opcode).u2(slot);
+            }
+            return op(opcode).u1(slot);
+        }
+
+        int length() {
+            return bytes.size();
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Defines the proxy class of one interface.
+     */
+    private static final class ProxyClassLoader extends ClassLoader {
+
+        ProxyClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Resolves {@link Bulkhead} to this runtime's class, which the interface's loader need not see.
+         */
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(Bulkhead.class.getName())) {
+                return Bulkhead.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import dev.modula.util.ClassLoaderUtil;
+import dev.modula.util.PackageMap;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The delegation rules of one module compiled into a single {@link PackageMap}: the JDK's packages, the
+ * shared packages and the spec's {@link DelegationRule}s, so that routing a class name is one trie walk.
+ *
+ * <p>JDK packages are found once per JVM: {@code java.*}, plus, on Java 9+, every package of the boot layer
+ * modules defined by the boot or platform class loader. They are routed to the platform class loader
+ * directly, skipping the parent chain and the module's JARs, unless a shared package or a rule of the module
+ * covers them; {@code java.*} always is, since no other loader may define it.</p>
+ */
+final class DelegationPolicy {
+
+    /**
+     * Where a class or resource is looked up.
+     */
+    enum Route {
+        /**
+         * The platform class loader only; a class it lacks is still looked up in the module, except {@code java.*}.
+         */
+        PLATFORM,
+        PARENT_FIRST,
+        CHILD_FIRST,
+        PARENT_ONLY,
+        MODULE_ONLY;
+
+        static Route of(DelegationRule rule) {
+            return valueOf(rule.name());
+        }
+    }
+
+    /**
+     * Compiled policies by their normalized shared packages and rules; modules and reloads with the same
+     * configuration share one, since compiling the JDK's packages takes about a millisecond.
+     */
+    private static final ConcurrentMap<List<Object>, DelegationPolicy> COMPILED = new ConcurrentHashMap<>();
+
+    /**
+     * JDK classes already loaded through {@link #loadPlatformClass(String)}. They are never unloaded, so holding
+     * them for the life of the JVM leaks nothing, and a hit skips the platform loader's locking and lookups.
+     */
+    private static final ConcurrentMap<String, Class<?>> PLATFORM_CLASSES = new ConcurrentHashMap<>();
+
+    private final PackageMap<Route> routes;
+
+    private DelegationPolicy(PackageMap<Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Compiles the rules of a module.
+     *
+     * @param sharedPackages the shared packages, {@link Route#PARENT_FIRST}
+     * @param rules the package rules, which win over shared packages of the same name
+     * @return the policy
+     */
+    static DelegationPolicy compile(Set<String> sharedPackages, Map<String, DelegationRule> rules) {
+        Set<String> shared = new TreeSet<>(ClassLoaderUtil.normalizeSharedPackages(sharedPackages));
+        Map<String, DelegationRule> prefixes = new TreeMap<>();
+        for (Map.Entry<String, DelegationRule> rule : rules.entrySet()) {
+            String prefix = rule.getKey().endsWith(".") ? rule.getKey() : rule.getKey() + ".";
+            if (!prefix.startsWith("java.")) {
+                prefixes.put(prefix, rule.getValue());
+            }
+        }
+        List<Object> key = Arrays.<Object>asList(shared, prefixes);
+        DelegationPolicy policy = COMPILED.get(key);
+        if (policy == null) {
+            policy = new DelegationPolicy(routesOf(shared, prefixes));
+            DelegationPolicy raced = COMPILED.putIfAbsent(key, policy);
+            if (raced != null) {
+                policy = raced;
+            }
+        }
+        return policy;
+    }
+
+    private static PackageMap<Route> routesOf(Set<String> shared, Map<String, DelegationRule> prefixes) {
+        PackageMap.Builder<Route> module = PackageMap.builder();
+        for (String prefix : shared) {
+            module.prefix(prefix, Route.PARENT_FIRST);
+        }
+        for (Map.Entry<String, DelegationRule> rule : prefixes.entrySet()) {
+            module.prefix(rule.getKey(), Route.of(rule.getValue()));
+        }
+        // JDK packages the module says nothing about go to the platform loader; the module's own choice wins.
+        PackageMap<Route> declared = module.build();
+        for (String pkg : Platform.PACKAGES) {
+            // java.* is one prefix below, so that a lookup stops right after "java."
+            if (!pkg.startsWith("java.") && declared.get(pkg + ".X") == null) {
+                module.exact(pkg, Route.PLATFORM);
+            }
+        }
+        module.prefix("java.", Route.PLATFORM);
+        return module.build();
+    }
+
+    /**
+     * Returns the route of a class.
+     *
+     * @param className the fully qualified class name
+     * @return the route; {@link Route#MODULE_ONLY} if nothing covers the class
+     */
+    Route route(String className) {
+        Route route = routes.get(className);
+        return route != null ? route : Route.MODULE_ONLY;
+    }
+
+    /**
+     * Returns the route of a resource, by its directory read as a package.
+     *
+     * @param resourceName the resource name, e.g. {@code META-INF/spring.factories}
+     * @return the route; {@link Route#MODULE_ONLY} if nothing covers the resource
+     */
+    Route resourceRoute(String resourceName) {
+        Route route = routes.getForResource(resourceName);
+        return route != null ? route : Route.MODULE_ONLY;
+    }
+
+    /**
+     * Returns the loader of the JDK's classes: the platform class loader on Java 9+, the extension class
+     * loader on Java 8.
+     */
+    static ClassLoader platformLoader() {
+        return Platform.LOADER;
+    }
+
+    /**
+     * Loads a JDK class from the platform loader, or from the classes it already returned.
+     *
+     * @param className the fully qualified class name
+     * @return the class
+     * @throws ClassNotFoundException if the platform loader does not have it
+     */
+    static Class<?> loadPlatformClass(String className) throws ClassNotFoundException {
+        Class<?> clazz = PLATFORM_CLASSES.get(className);
+        if (clazz == null) {
+            clazz = Platform.LOADER.loadClass(className);
+            PLATFORM_CLASSES.put(className, clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * The JDK's packages and loader, found on first use.
+     */
+    private static final class Platform {
+
+        static final ClassLoader LOADER;
+        static final Collection<String> PACKAGES;
+
+        static {
+            ClassLoader loader;
+            Collection<String> packages;
+            try {
+                loader = (ClassLoader) ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+                packages = bootLayerPackages(loader);
+            } catch (Exception e) {
+                // Java 8: the extension loader; only java.* is known to be the JDK's
+                loader = ClassLoader.getSystemClassLoader().getParent();
+                packages = Collections.emptySet();
+            }
+            LOADER = loader;
+            PACKAGES = packages;
+        }
+
+        private static Collection<String> bootLayerPackages(ClassLoader platform) throws Exception {
+            Class<?> layerClass = Class.forName("java.lang.ModuleLayer");
+            Class<?> moduleClass = Class.forName("java.lang.Module");
+            Method getClassLoader = moduleClass.getMethod("getClassLoader");
+            Method getPackages = moduleClass.getMethod("getPackages");
+            Object bootLayer = layerClass.getMethod("boot").invoke(null);
+            Set<String> packages = new TreeSet<>();
+            for (Object module : (Set<?>) layerClass.getMethod("modules").invoke(bootLayer)) {
+                // Application modules on the module path belong to the application class loader.
+                Object loader = getClassLoader.invoke(module);
+                if (loader == null || loader == platform) {
+                    for (Object pkg : (Set<?>) getPackages.invoke(module)) {
+                        packages.add((String) pkg);
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(packages);
+        }
+    }
+}
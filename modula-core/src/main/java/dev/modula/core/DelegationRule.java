@@ -0,0 +1,34 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * Where a module's class loader looks for the classes and resources of a package, see
+ * {@link ModuleSpec.Builder#packageRule(String, DelegationRule)}.
+ *
+ * <p>Packages without a rule are {@link #MODULE_ONLY}, and shared packages are {@link #PARENT_FIRST}. Classes
+ * of the JDK (the {@code java.*} packages and, on Java 9+, every package of the boot layer's JDK modules) go
+ * straight to the platform class loader unless a rule covers them.</p>
+ */
+public enum DelegationRule {
+    /**
+     * The parent first, then the module: what {@link ModuleSpec.Builder#sharedPackages(String...)} declares.
+     */
+    PARENT_FIRST,
+
+    /**
+     * The module first, then the parent, e.g. for a library the module bundles a newer version of but can
+     * do without.
+     */
+    CHILD_FIRST,
+
+    /**
+     * The parent only; the module's own copies are ignored.
+     */
+    PARENT_ONLY,
+
+    /**
+     * The module only; this is what packages without a rule get.
+     */
+    MODULE_ONLY
+}
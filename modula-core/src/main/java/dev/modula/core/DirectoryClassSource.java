@@ -0,0 +1,98 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import dev.modula.util.ClassLoaderUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ClassSource} over an exploded class directory, such as {@code target/classes}.
+ *
+ * <p>The directory tree is walked once when the source is opened; files added afterwards are not
+ * seen. This saves packaging a JAR during development.</p>
+ */
+final class DirectoryClassSource implements ClassSource {
+
+    private final Path root;
+    private final URL location;
+    private final CodeSource codeSource;
+    private final List<Entry> entries;
+
+    DirectoryClassSource(Path root) throws IOException {
+        this.root = root;
+        this.location = root.toUri().toURL();
+        this.codeSource = new CodeSource(location, (Certificate[]) null);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        List<Entry> list = new ArrayList<>(files.size());
+        for (Path file : files) {
+            list.add(new FileEntry(ClassLoaderUtil.toEntryName(root.relativize(file)), file));
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public URL getLocation() {
+        return location;
+    }
+
+    @Override
+    public CodeSource getCodeSource() {
+        return codeSource;
+    }
+
+    @Override
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        // No open handles: files are opened per read.
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    private final class FileEntry extends Entry {
+
+        private final Path file;
+
+        FileEntry(String name, Path file) {
+            super(name);
+            this.file = file;
+        }
+
+        @Override
+        public ClassSource getSource() {
+            return DirectoryClassSource.this;
+        }
+
+        @Override
+        public ByteBuffer read() throws IOException {
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return Files.newInputStream(file);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The identity, size and modification time of a module's JAR files and archive when a version of it was loaded,
+ * to tell whether one was overwritten in place since.
+ *
+ * <p>A version keeps reading its files until it is closed, and archives and {@link IoEngine#MAPPED} JARs are
+ * memory-mapped: overwriting such a file makes reads fail, or the JVM crash. A file replaced by renaming a new
+ * one into place is safe, since the old version keeps the old file open; it has a new file key and is not
+ * reported. Where the file system has no file keys, e.g. on Windows, which does not let a mapped file be
+ * overwritten anyway, nothing is reported.</p>
+ */
+final class FileStamps {
+
+    private static final FileStamps NONE = new FileStamps(Collections.<Path, Stamp>emptyMap());
+
+    private final Map<Path, Stamp> stamps;
+
+    private FileStamps(Map<Path, Stamp> stamps) {
+        this.stamps = stamps;
+    }
+
+    /**
+     * Records the files of a module's path; directories and files that cannot be read are left out.
+     */
+    static FileStamps of(ModuleSpec spec) {
+        List<Path> files = new ArrayList<>();
+        if (spec.getModuleArchive() != null) {
+            files.add(spec.getModuleArchive());
+        }
+        if (spec.getAdapterJar() != null) {
+            files.add(spec.getAdapterJar());
+        }
+        files.addAll(spec.getDependencyJars());
+        for (List<Path> library : spec.getLibraries()) {
+            files.addAll(library);
+        }
+        Map<Path, Stamp> stamps = new LinkedHashMap<>();
+        for (Path file : files) {
+            Stamp stamp = Stamp.of(file);
+            if (stamp != null) {
+                stamps.put(file, stamp);
+            }
+        }
+        return stamps.isEmpty() ? NONE : new FileStamps(stamps);
+    }
+
+    /**
+     * Returns the files that are still the same file but have another size or modification time now.
+     */
+    List<Path> changedInPlace() {
+        List<Path> changed = new ArrayList<>();
+        for (Map.Entry<Path, Stamp> recorded : stamps.entrySet()) {
+            Stamp now = Stamp.of(recorded.getKey());
+            Stamp then = recorded.getValue();
+            if (now != null && then.fileKey.equals(now.fileKey)
+                    && (then.size != now.size || then.lastModified != now.lastModified)) {
+                changed.add(recorded.getKey());
+            }
+        }
+        return changed;
+    }
+
+    private static final class Stamp {
+        final Object fileKey;
+        final long size;
+        final long lastModified;
+
+        private Stamp(Object fileKey, long size, long lastModified) {
+            this.fileKey = fileKey;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Returns the stamp of a regular file, or {@code null} for anything else or a file without a file key.
+         */
+        static Stamp of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile() || attributes.fileKey() == null) {
+                    return null;
+                }
+                return new Stamp(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * The lifecycle of instances returned by {@link ModulaRuntime.IsolatedModule#getInstance(String, Class, InstanceScope)}.
+ */
+public enum InstanceScope {
+    /**
+     * A new instance on every call, created through a cached constructor handle.
+     */
+    PROTOTYPE,
+
+    /**
+     * One instance per exported class and module, created on first use and returned on every later call.
+     * The class must be safe for concurrent use.
+     */
+    SINGLETON
+}
@@ -0,0 +1,22 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * Selects how a module's JAR files are opened and read.
+ */
+public enum IoEngine {
+    /**
+     * Reads JARs through {@link java.util.jar.JarFile}. This is the default.
+     */
+    JAR_FILE,
+
+    /**
+     * Memory-maps each JAR and parses its central directory once. Stored entries are passed to
+     * {@code defineClass} directly from the mapping without copying, and deflated entries are
+     * inflated straight into a buffer of the exact uncompressed size.
+     *
+     * <p>ZIP64 archives are not supported by this engine and are read with {@link #JAR_FILE} instead.</p>
+     */
+    MAPPED
+}
@@ -0,0 +1,116 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A {@link ClassSource} backed by {@link JarFile}, used by {@link IoEngine#JAR_FILE}.
+ */
+final class JarFileClassSource implements ClassSource {
+
+    private final JarFile jarFile;
+    private final URL location;
+    private final CodeSource codeSource;
+    private final List<Entry> entries;
+
+    JarFileClassSource(Path path) throws IOException {
+        this.location = path.toUri().toURL();
+        this.codeSource = new CodeSource(location, (Certificate[]) null);
+        this.jarFile = new JarFile(path.toFile());
+        List<Entry> list = new ArrayList<>(jarFile.size());
+        Enumeration<JarEntry> e = jarFile.entries();
+        while (e.hasMoreElements()) {
+            JarEntry jarEntry = e.nextElement();
+            if (!jarEntry.isDirectory()) {
+                list.add(new JarEntryRef(jarEntry));
+            }
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public URL getLocation() {
+        return location;
+    }
+
+    @Override
+    public CodeSource getCodeSource() {
+        return codeSource;
+    }
+
+    @Override
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        jarFile.close();
+    }
+
+    private final class JarEntryRef extends Entry {
+
+        private final JarEntry jarEntry;
+
+        JarEntryRef(JarEntry jarEntry) {
+            super(jarEntry.getName());
+            this.jarEntry = jarEntry;
+        }
+
+        @Override
+        public ClassSource getSource() {
+            return JarFileClassSource.this;
+        }
+
+        @Override
+        public ByteBuffer read() throws IOException {
+            long size = jarEntry.getSize();
+            try (InputStream is = jarFile.getInputStream(jarEntry)) {
+                if (size < 0 || size > Integer.MAX_VALUE) {
+                    return ByteBuffer.wrap(readUnsized(is));
+                }
+                // Size is known from the central directory: read straight into an exact-size array.
+                byte[] data = new byte[(int) size];
+                int off = 0;
+                while (off < data.length) {
+                    int n = is.read(data, off, data.length - off);
+                    if (n < 0) {
+                        throw new EOFException("Unexpected end of " + getName() + " in " + location);
+                    }
+                    off += n;
+                }
+                return ByteBuffer.wrap(data);
+            }
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return jarFile.getInputStream(jarEntry);
+        }
+
+        private byte[] readUnsized(InputStream is) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] data = new byte[8192];
+            int nRead;
+            while ((nRead = is.read(data, 0, data.length)) != -1) {
+                buffer.write(data, 0, nRead);
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
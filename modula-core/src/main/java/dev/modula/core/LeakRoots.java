@@ -0,0 +1,151 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans well-known GC roots that commonly keep a module's class loader alive, see
+ * {@link LoaderLeakDetector#findRetainingPaths(ClassLoader)}.
+ */
+final class LeakRoots {
+
+    private LeakRoots() {
+    }
+
+    static List<String> scan(ClassLoader loader) {
+        List<String> paths = new ArrayList<>();
+        Collection<Thread> threads = Thread.getAllStackTraces().keySet();
+        for (Thread thread : threads) {
+            if (belongsTo(thread.getContextClassLoader(), loader)) {
+                paths.add("thread '" + thread.getName() + "' -> contextClassLoader");
+            }
+            if (belongsTo(thread, loader)) {
+                paths.add("thread '" + thread.getName() + "' is a " + thread.getClass().getName()
+                        + " defined by the module");
+            }
+        }
+        scanThreadLocals(threads, loader, paths);
+        scanDrivers(loader, paths);
+        scanShutdownHooks(loader, paths);
+        return paths;
+    }
+
+    /**
+     * Returns whether {@code o} is {@code loader}, a loader below it, or an object or class defined by one of those.
+     */
+    private static boolean belongsTo(Object o, ClassLoader loader) {
+        if (o == null) {
+            return false;
+        }
+        ClassLoader cl;
+        if (o instanceof ClassLoader) {
+            cl = (ClassLoader) o;
+        } else if (o instanceof Class) {
+            cl = ((Class<?>) o).getClassLoader();
+        } else {
+            cl = o.getClass().getClassLoader();
+        }
+        for (; cl != null; cl = cl.getParent()) {
+            if (cl == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void scanThreadLocals(Collection<Thread> threads, ClassLoader loader, List<String> paths) {
+        Field threadLocals;
+        Field inheritable;
+        try {
+            threadLocals = accessible(Thread.class, "threadLocals");
+            inheritable = accessible(Thread.class, "inheritableThreadLocals");
+        } catch (Exception e) {
+            paths.add("(ThreadLocals not inspected, add --add-opens java.base/java.lang=ALL-UNNAMED)");
+            return;
+        }
+        for (Thread thread : threads) {
+            try {
+                scanThreadLocalMap(thread, "threadLocals", threadLocals.get(thread), loader, paths);
+                scanThreadLocalMap(thread, "inheritableThreadLocals", inheritable.get(thread), loader, paths);
+            } catch (Exception e) {
+                paths.add("(ThreadLocals of thread '" + thread.getName() + "' not inspected: " + e + ")");
+            }
+        }
+    }
+
+    private static void scanThreadLocalMap(Thread thread, String field, Object map, ClassLoader loader,
+                                           List<String> paths) throws Exception {
+        if (map == null) {
+            return;
+        }
+        Object[] table = (Object[]) accessible(map.getClass(), "table").get(map);
+        for (Object entry : table) {
+            if (entry == null) {
+                continue;
+            }
+            Object key = ((Reference<?>) entry).get();
+            Object value = accessible(entry.getClass(), "value").get(entry);
+            if (belongsTo(key, loader) || belongsTo(value, loader)) {
+                paths.add("thread '" + thread.getName() + "' -> " + field + " -> "
+                        + describe(key) + " -> value " + describe(value));
+            }
+        }
+    }
+
+    private static void scanDrivers(ClassLoader loader, List<String> paths) {
+        try {
+            Class<?> driverManager = Class.forName("java.sql.DriverManager");
+            Collection<?> drivers = (Collection<?>) accessible(driverManager, "registeredDrivers").get(null);
+            for (Object info : drivers) {
+                Object driver = accessible(info.getClass(), "driver").get(info);
+                if (belongsTo(driver, loader)) {
+                    paths.add("java.sql.DriverManager.registeredDrivers -> " + describe(driver)
+                            + " (call DriverManager.deregisterDriver when the module stops)");
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // java.sql not present: nothing can be registered there
+        } catch (Exception e) {
+            paths.add("(JDBC drivers not inspected, add --add-opens java.sql/java.sql=ALL-UNNAMED)");
+        }
+    }
+
+    private static void scanShutdownHooks(ClassLoader loader, List<String> paths) {
+        try {
+            Class<?> hooksClass = Class.forName("java.lang.ApplicationShutdownHooks");
+            Map<?, ?> hooks = (Map<?, ?>) accessible(hooksClass, "hooks").get(null);
+            List<Object> snapshot;
+            synchronized (hooksClass) {
+                snapshot = hooks == null ? new ArrayList<>() : new ArrayList<Object>(hooks.keySet());
+            }
+            for (Object o : snapshot) {
+                Thread hook = (Thread) o;
+                if (belongsTo(hook, loader) || belongsTo(hook.getContextClassLoader(), loader)) {
+                    paths.add("Runtime shutdown hook -> thread '" + hook.getName() + "' (" + hook.getClass().getName()
+                            + ", call Runtime.removeShutdownHook when the module stops)");
+                }
+            }
+        } catch (Exception e) {
+            paths.add("(shutdown hooks not inspected, add --add-opens java.base/java.lang=ALL-UNNAMED)");
+        }
+    }
+
+    private static Field accessible(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    private static String describe(Object o) {
+        if (o == null) {
+            return "null";
+        }
+        return o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o));
+    }
+}
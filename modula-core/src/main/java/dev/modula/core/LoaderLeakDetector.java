@@ -0,0 +1,185 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies that the class loaders of closed modules are actually garbage collected.
+ *
+ * <p>Every retired loader is tracked with a {@link PhantomReference}. A loader that is still reachable
+ * once the grace period has passed is reported as a {@link Suspect}. A leaked loader keeps all of its
+ * classes in Metaspace, so these usually point at a ThreadLocal, a JDBC driver registration, a shutdown
+ * hook or a thread context class loader that still references the module.
+ * {@link #findRetainingPaths(ClassLoader)} walks those common roots and names what holds the loader.</p>
+ *
+ * <p>The detector never forces a collection; a suspect may simply not have been collected yet if the
+ * heap has been quiet since the module was closed.</p>
+ */
+public final class LoaderLeakDetector {
+
+    private final long gracePeriodNanos;
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+    private final Set<Retired> retired = Collections.newSetFromMap(new ConcurrentHashMap<Retired, Boolean>());
+
+    /**
+     * Creates a detector that reports loaders still alive {@code gracePeriod} after they were retired.
+     *
+     * @param gracePeriod the grace period
+     * @param unit the unit of {@code gracePeriod}
+     */
+    public LoaderLeakDetector(long gracePeriod, TimeUnit unit) {
+        this.gracePeriodNanos = unit.toNanos(gracePeriod);
+    }
+
+    /**
+     * Starts tracking a loader that is no longer used and should become unreachable.
+     *
+     * @param moduleName the name of the module the loader belonged to
+     * @param loader the retired loader
+     */
+    public void track(String moduleName, ClassLoader loader) {
+        expunge();
+        retired.add(new Retired(moduleName, loader, queue));
+    }
+
+    /**
+     * Returns the number of retired loaders that have not been collected yet.
+     *
+     * @return the number of tracked loaders
+     */
+    public int getRetiredCount() {
+        expunge();
+        return retired.size();
+    }
+
+    /**
+     * Returns the retired loaders that are still reachable after the grace period.
+     *
+     * @return the suspected leaks, oldest first
+     */
+    public List<Suspect> findSuspects() {
+        expunge();
+        long now = System.nanoTime();
+        List<Suspect> suspects = new ArrayList<>();
+        for (Retired r : retired) {
+            long age = now - r.retiredAt;
+            if (age >= gracePeriodNanos && r.weak.get() != null) {
+                suspects.add(new Suspect(r.moduleName, TimeUnit.NANOSECONDS.toMillis(age), r.weak));
+            }
+        }
+        suspects.sort((a, b) -> Long.compare(b.retiredMillis, a.retiredMillis));
+        return suspects;
+    }
+
+    /**
+     * Looks for references to {@code loader}, or to objects of classes it defined, from common leak roots:
+     * thread context class loaders, ThreadLocal values, registered JDBC drivers and shutdown hooks.
+     *
+     * <p>On Java 9 and later, ThreadLocals, JDBC drivers and shutdown hooks can only be inspected if the
+     * JDK internals are opened to this class, e.g. with
+     * {@code --add-opens java.base/java.lang=ALL-UNNAMED --add-opens java.sql/java.sql=ALL-UNNAMED};
+     * otherwise a note saying so is returned instead.</p>
+     *
+     * @param loader the loader to look for
+     * @return one human readable retaining path per finding
+     */
+    public static List<String> findRetainingPaths(ClassLoader loader) {
+        return LeakRoots.scan(loader);
+    }
+
+    private void expunge() {
+        Reference<? extends ClassLoader> ref;
+        while ((ref = queue.poll()) != null) {
+            retired.remove(ref);
+        }
+    }
+
+    /**
+     * A retired loader that is still reachable after the grace period.
+     */
+    public static final class Suspect {
+        private final String moduleName;
+        private final long retiredMillis;
+        private final WeakReference<ClassLoader> loader;
+
+        Suspect(String moduleName, long retiredMillis, WeakReference<ClassLoader> loader) {
+            this.moduleName = moduleName;
+            this.retiredMillis = retiredMillis;
+            this.loader = loader;
+        }
+
+        /**
+         * Returns the name of the module the loader belonged to.
+         *
+         * @return the module name
+         */
+        public String getModuleName() {
+            return moduleName;
+        }
+
+        /**
+         * Returns how long ago the loader was retired.
+         *
+         * @return the time since retirement in milliseconds
+         */
+        public long getRetiredMillis() {
+            return retiredMillis;
+        }
+
+        /**
+         * Scans the common leak roots for this loader, see {@link LoaderLeakDetector#findRetainingPaths}.
+         *
+         * @return the retaining paths; empty if the loader has been collected in the meantime
+         */
+        public List<String> findRetainingPaths() {
+            ClassLoader l = loader.get();
+            return l == null ? Collections.<String>emptyList() : LeakRoots.scan(l);
+        }
+
+        /**
+         * Two suspects are equal if they stand for the same retired loader, e.g. found by successive
+         * {@link LoaderLeakDetector#findSuspects()} calls.
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Suspect && ((Suspect) o).loader == loader;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(loader);
+        }
+
+        @Override
+        public String toString() {
+            return "module '" + moduleName + "' retired " + retiredMillis + " ms ago";
+        }
+    }
+
+    /**
+     * The phantom reference tracking collection, plus a weak one so the loader can still be
+     * inspected while it is alive (a phantom reference never returns its referent).
+     */
+    private static final class Retired extends PhantomReference<ClassLoader> {
+        final String moduleName;
+        final long retiredAt;
+        final WeakReference<ClassLoader> weak;
+
+        Retired(String moduleName, ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.moduleName = moduleName;
+            this.retiredAt = System.nanoTime();
+            this.weak = new WeakReference<>(loader);
+        }
+    }
+}
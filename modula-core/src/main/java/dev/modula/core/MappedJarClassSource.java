@@ -0,0 +1,338 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A {@link ClassSource} that reads a JAR from a memory-mapped buffer, used by {@link IoEngine#MAPPED}
+ * and for JARs nested in a module archive (see {@link ModuleArchive}).
+ *
+ * <p>The central directory is parsed once from the mapping. Stored entries are returned as
+ * read-only slices of the mapping, so their bytes are never copied on the Java heap. Deflated
+ * entries are inflated into an array of the exact uncompressed size; on Java 11 and later the
+ * compressed input is also fed to the {@link Inflater} straight from the mapping.</p>
+ *
+ * <p>The mapping is released by the garbage collector once the source and every buffer read from
+ * it are unreachable; {@link #close()} cannot unmap it eagerly.</p>
+ */
+final class MappedJarClassSource implements ClassSource {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * {@code Inflater.setInput(ByteBuffer)}, available since Java 11; {@code null} on older runtimes.
+     */
+    private static final MethodHandle SET_INPUT_BUFFER = findSetInputBuffer();
+
+    private final URL location;
+    private final CodeSource codeSource;
+
+    /**
+     * The whole archive, little-endian; only ever read with absolute getters or through duplicates.
+     */
+    private final ByteBuffer map;
+    private final List<Entry> entries;
+
+    MappedJarClassSource(Path path) throws IOException {
+        this(map(path), path.toUri().toURL());
+    }
+
+    /**
+     * Reads a JAR whose bytes are already in memory, e.g. a stored JAR entry of an outer mapped archive.
+     *
+     * @param archive the complete JAR content; only its remaining bytes are used
+     * @param location the location reported for the JAR
+     * @throws ZipException if the content is not a readable JAR
+     */
+    MappedJarClassSource(ByteBuffer archive, URL location) throws ZipException {
+        this.location = location;
+        this.codeSource = new CodeSource(location, (Certificate[]) null);
+        this.map = archive.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    /**
+     * Reads a JAR nested in a module bundle, taking its entries from the bundle's index instead of its central
+     * directory.
+     *
+     * @param archive the complete JAR content; only its remaining bytes are used
+     * @param location the location reported for the JAR
+     * @param jar the index of the JAR
+     * @throws ZipException if the index does not match the content
+     */
+    MappedJarClassSource(ByteBuffer archive, URL location, ModuleBundle.Jar jar) throws ZipException {
+        this.location = location;
+        this.codeSource = new CodeSource(location, (Certificate[]) null);
+        this.map = archive.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (map.limit() != jar.size) {
+            throw new ZipException("Module bundle index does not match " + location);
+        }
+        List<Entry> list = new ArrayList<>(jar.entryNames.length);
+        for (int i = 0; i < jar.entryNames.length; i++) {
+            if ((long) jar.localHeaders[i] + LOC_HEADER > map.limit()) {
+                throw new ZipException("Module bundle index does not match " + location);
+            }
+            list.add(new MappedEntry(jar.entryNames[i], jar.methods[i], jar.localHeaders[i],
+                    jar.compressedSizes[i], jar.sizes[i]));
+        }
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("Archive too large to map: " + path);
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return mapped;
+        }
+    }
+
+    @Override
+    public URL getLocation() {
+        return location;
+    }
+
+    @Override
+    public CodeSource getCodeSource() {
+        return codeSource;
+    }
+
+    @Override
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release eagerly, see class comment.
+    }
+
+    private List<Entry> readCentralDirectory() throws ZipException {
+        int end = findEndOfCentralDirectory();
+        int count = u16(end + 10);
+        long offset = u32(end + 16);
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 archive not supported by the mapped engine: " + location);
+        }
+        List<Entry> list = new ArrayList<>(count);
+        int pos = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_HEADER > map.limit() || map.getInt(pos) != CEN_SIG) {
+                throw new ZipException("Invalid central directory in " + location);
+            }
+            int method = u16(pos + 10);
+            long compressedSize = u32(pos + 20);
+            long size = u32(pos + 24);
+            int nameLength = u16(pos + 28);
+            int extraLength = u16(pos + 30);
+            int commentLength = u16(pos + 32);
+            long localHeader = u32(pos + 42);
+            String name = utf8(pos + CEN_HEADER, nameLength);
+            if (!name.endsWith("/")) {
+                list.add(new MappedEntry(name, method, (int) localHeader, (int) compressedSize, (int) size));
+            }
+            pos += CEN_HEADER + nameLength + extraLength + commentLength;
+        }
+        return list;
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        int last = map.limit() - END_HEADER;
+        int stop = Math.max(0, last - MAX_COMMENT);
+        for (int pos = last; pos >= stop; pos--) {
+            if (map.getInt(pos) == END_SIG) {
+                return pos;
+            }
+        }
+        throw new ZipException("End of central directory not found in " + location);
+    }
+
+    private int u16(int pos) {
+        return map.getShort(pos) & 0xFFFF;
+    }
+
+    private long u32(int pos) {
+        return map.getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    private String utf8(int pos, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = map.get(pos + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer slice(int pos, int length) {
+        ByteBuffer b = map.duplicate();
+        b.position(pos);
+        b.limit(pos + length);
+        return b.slice().asReadOnlyBuffer();
+    }
+
+    private static MethodHandle findSetInputBuffer() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Inflater.class, "setInput",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An entry as listed in the central directory; {@link ModuleBundleWriter} indexes these fields.
+     */
+    final class MappedEntry extends Entry {
+
+        final int method;
+        final int localHeader;
+        final int compressedSize;
+        final int size;
+
+        MappedEntry(String name, int method, int localHeader, int compressedSize, int size) {
+            super(name);
+            this.method = method;
+            this.localHeader = localHeader;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        @Override
+        public ClassSource getSource() {
+            return MappedJarClassSource.this;
+        }
+
+        @Override
+        public ByteBuffer read() throws IOException {
+            ByteBuffer compressed = data();
+            switch (method) {
+                case STORED:
+                    return compressed;
+                case DEFLATED:
+                    return inflate(compressed);
+                default:
+                    throw new ZipException("Unsupported compression method " + method
+                            + " for " + getName() + " in " + location);
+            }
+        }
+
+        /**
+         * Streams a stored entry straight from the mapping, and inflates a deflated one while it is read.
+         */
+        @Override
+        public InputStream openStream() throws IOException {
+            ByteBuffer compressed = data();
+            switch (method) {
+                case STORED:
+                    return new ByteBufferInputStream(compressed);
+                case DEFLATED:
+                    // "nowrap" inflaters need one extra dummy byte after the deflate stream.
+                    InputStream in = new SequenceInputStream(new ByteBufferInputStream(compressed),
+                            new ByteArrayInputStream(new byte[1]));
+                    return new InflaterInputStream(in, new Inflater(true), Math.max(512, Math.min(size, 8192))) {
+                        private boolean closed;
+
+                        @Override
+                        public void close() throws IOException {
+                            if (!closed) {
+                                closed = true;
+                                super.close();
+                                inf.end();
+                            }
+                        }
+                    };
+                default:
+                    throw new ZipException("Unsupported compression method " + method
+                            + " for " + getName() + " in " + location);
+            }
+        }
+
+        /**
+         * Returns the entry's data as stored in the archive, i.e. still compressed if it is deflated.
+         */
+        private ByteBuffer data() throws ZipException {
+            if (map.getInt(localHeader) != LOC_SIG) {
+                throw new ZipException("Invalid local header for " + getName() + " in " + location);
+            }
+            // The local extra field may differ from the central one, so the data offset is taken from here.
+            int data = localHeader + LOC_HEADER + u16(localHeader + 26) + u16(localHeader + 28);
+            return slice(data, compressedSize);
+        }
+
+        private ByteBuffer inflate(ByteBuffer compressed) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                setInput(inflater, compressed);
+                byte[] out = new byte[size];
+                int off = 0;
+                while (off < size) {
+                    int n = inflater.inflate(out, off, size - off);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    off += n;
+                }
+                if (off != size) {
+                    throw new ZipException("Invalid entry size for " + getName() + " in " + location);
+                }
+                return ByteBuffer.wrap(out);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data for " + getName() + " in " + location
+                        + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private void setInput(Inflater inflater, ByteBuffer compressed) {
+            if (SET_INPUT_BUFFER != null) {
+                try {
+                    SET_INPUT_BUFFER.invokeExact(inflater, compressed);
+                    return;
+                } catch (Throwable t) {
+                    // fall through to the array copy
+                }
+            }
+            // "nowrap" inflaters need one extra dummy byte after the deflate stream.
+            byte[] in = new byte[compressedSize + 1];
+            compressed.duplicate().get(in, 0, compressedSize);
+            inflater.setInput(in);
+        }
+    }
+}
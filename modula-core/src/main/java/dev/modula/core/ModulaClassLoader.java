@@ -2,17 +2,19 @@
 // Copyright (c) 2015 Modula Authors. All rights reserved.
 package dev.modula.core;
 
-import dev.modula.util.ClassLoaderUtil;
+import dev.modula.util.PackageMap;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
-import java.security.cert.Certificate;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
 /**
  * A custom class loader that loads classes from an adapter JAR and its dependency JARs
@@ -22,48 +24,170 @@ import java.util.jar.JarFile;
  * <ol>
  *   <li>Adapter JAR: only exported classes or classes in shared packages are accessible.</li>
  *   <li>Dependency JARs: all classes are private to the module and not visible externally.</li>
+ *   <li>Libraries: loaded by this loader like dependency JARs, or, with a {@link SharedLibraryLayer}, by a
+ *   library loader shared with every module that uses the same library.</li>
  * </ol>
  *
- * <p>Each JAR is associated with its own {@link CodeSource}, ensuring accurate class origin metadata.</p>
+ * <p>Each JAR is associated with its own {@link CodeSource}, ensuring accurate class origin metadata. All classes
+ * of a JAR share one {@link ProtectionDomain}, created with the loader (see {@link SourceDomain}). The package of
+ * a class is defined before its first class, with the specification, implementation and sealing attributes of the
+ * JAR's manifest, like a {@link java.net.URLClassLoader} does; a sealed package only takes classes from the JAR
+ * that sealed it.</p>
+ *
+ * <p>All JARs are indexed once at construction (see {@link ClassIndex}), so finding a class costs a
+ * single hash lookup no matter how many dependency JARs the module has. When several JARs contain
+ * the same class, the first one in the order above wins.</p>
+ *
+ * <p>The loader is registered as parallel capable, so each class name has its own class loading lock and
+ * unrelated classes load concurrently. Sharing locks between names would deadlock: defining a class loads
+ * its superclass on the same thread while the class's lock is held.</p>
+ *
+ * <p>If the module declares {@link ClassTransformer}s, every class read from its own JARs passes through them
+ * before it is defined (see {@link ModuleSpec.Builder#transformer(ClassTransformer)}).</p>
+ *
+ * <p>Before any of these, the package of a class decides where it is looked up (see {@link DelegationPolicy}).
+ * Classes of the JDK go straight to the platform class loader, without taking a class loading lock or
+ * looking at the module's JARs. Shared packages are parent first, packages with a {@link DelegationRule} in
+ * the spec follow it, and all other packages are module only. Packages the module imports from another
+ * module (see {@link ModuleSpec.Builder#importPackages(String, String...)}) come first of all: their classes
+ * and resources are those of the exporting module's loader, which the lookup goes to directly.</p>
+ *
+ * <p>Resources follow the same isolation as classes. A resource in a shared package (its directory read
+ * as a package) is looked up in the parent first, then in the module; any other resource, including
+ * {@code META-INF/services/...}, {@code spring.factories} or {@code logback.xml} at the root, is looked
+ * up in the module only, so that e.g. a {@link java.util.ServiceLoader} in the module never finds a
+ * provider of the application that the module cannot load. Resources are served from a second index
+ * built with the class index (see {@link ResourceIndex}), are named by compact {@code modula:} URLs
+ * (see {@link ModuleResourceUrls}) and are streamed from their source without being copied first.</p>
  */
 public final class ModulaClassLoader extends ClassLoader {
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * Upper bound for the number of class names remembered in {@link #knownMisses}.
+     */
+    private static final int MAX_KNOWN_MISSES = 4096;
+
+    /**
+     * The module's class sources in module path order: the adapter JAR first, then each dependency JAR
+     * in declaration order. Each is a JAR opened with the spec's {@link IoEngine}, an exploded
+     * directory, or a JAR nested in the spec's module archive. Libraries that are not shared come last.
+     */
+    private final List<ClassSource> sources;
+
+    /**
+     * Shared libraries, searched in order after {@link #sources}; empty without a {@link SharedLibraryLayer}.
+     */
+    private final List<SharedLibraryLayer.Library> libraries;
+
+    /**
+     * The layer {@link #libraries} are released to on close; {@code null} if there are none.
+     */
+    private final SharedLibraryLayer libraryLayer;
+
+    /**
+     * The pool {@link #sources} are handed back to on close; {@code null} if this loader opened them itself.
+     */
+    private final ClassSourcePool sourcePool;
+
     /**
-     * The JAR file containing the module's adapter implementation.
+     * The protection domain and manifest of each of {@link #sources}, by identity.
      */
-    private final JarFile adapterJarFile;
+    private final Map<ClassSource, SourceDomain> domains;
 
     /**
-     * The code source corresponding to the adapter JAR, used for defining classes from it.
+     * Packages defined by this loader so far, by name; see {@link #definePackageOf(String, SourceDomain)}.
      */
-    private final CodeSource adapterCodeSource;
+    private final ConcurrentHashMap<String, Package> definedPackages = new ConcurrentHashMap<>();
 
     /**
-     * The list of JAR files containing the module's private dependencies.
+     * Index of every class in {@link #sources}, built once when the loader is constructed.
+     * The first JAR containing a class wins.
      */
-    private final List<JarFile> dependencyJarFiles;
+    private final ClassIndex classIndex;
 
     /**
-     * The list of code sources corresponding to each dependency JAR.
+     * Index of every entry in {@link #sources}, by entry name; keeps all entries of a duplicated name.
      */
-    private final List<CodeSource> dependencyCodeSources;
+    private final ResourceIndex resourceIndex;
 
     /**
-     * Normalized set of shared package prefixes (each ends with '.').<br/>
+     * Creates and opens the URLs of the module's resources.
+     */
+    private final ModuleResourceUrls resourceUrls;
+
+    /**
+     * Where each package is looked up: the JDK's packages, the shared packages (each a prefix ending with '.')
+     * and the spec's package rules.<br/>
      * e.g. <br/>
-     * dev.modula.core. <br/>
-     * dev.modula.util. <br/>
-     * dev.modula.demo. <br/>
+     * java. -&gt; platform <br/>
+     * dev.modula.core. -&gt; parent first <br/>
+     * com.fasterxml.jackson. -&gt; child first <br/>
      * <br/>
-     * Classes in these packages may be loaded by the parent class loader.
+     * Compiled into a trie, since it is consulted on every {@link #loadClass} call.
+     */
+    private final DelegationPolicy policy;
+
+    /**
+     * The loaders of the modules this module imports from, by imported package (each a prefix ending
+     * with '.'); {@code null} if the module imports nothing.
+     */
+    private final PackageMap<ModulaClassLoader> imports;
+
+    /**
+     * Names of classes the module already looked up in vain among its own classes. The module path never
+     * changes, so such a lookup can fail again at once, without searching the index and libraries or filling in
+     * a stack trace. It is consulted after {@link #findLoadedClass(String)}, so a class defined into this loader
+     * in another way later, e.g. by a proxy generator, is still found.
+     */
+    private final Set<String> knownMisses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The names in {@link #knownMisses} in the order they were added; the oldest are forgotten first once there
+     * are more than {@link #MAX_KNOWN_MISSES}.
      */
-    private final Set<String> sharedPackages;
+    private final Queue<String> knownMissOrder = new ConcurrentLinkedQueue<>();
 
     /**
      * Set of fully qualified class names that are explicitly exported by the module.
      */
     private final Set<String> exportedClasses;
 
+    private final String moduleName;
+
+    /**
+     * Class loading counters and timers; see {@link #getMetrics()}.
+     */
+    private final ModuleMetrics metrics;
+
+    /**
+     * The class data cache of the runtime, or {@code null} if none; see {@link ClassDataCache}.
+     */
+    private final ClassDataCache classDataCache;
+
+    /**
+     * The module's class transformers; {@code null} if it has none.
+     */
+    private final TransformerChain transformers;
+
+    /**
+     * Key of the module path in {@link #classDataCache}; {@code null} if the module is not cached.
+     */
+    private final long[] cacheKey;
+
+    /**
+     * Classes restored from the cache, by name; {@code null} unless restoring.
+     */
+    private final Map<String, ClassDataCache.Cached> restored;
+
+    /**
+     * Classes defined so far, in order; {@code null} unless recording.
+     */
+    private final List<ClassDataCache.Recorded> recorded;
+
     /**
      * Constructs a new {@code ModulaClassLoader} for the given module specification.
      *
@@ -72,30 +196,101 @@ public final class ModulaClassLoader extends ClassLoader {
      * @throws RuntimeException if any JAR file cannot be opened
      */
     public ModulaClassLoader(ModuleSpec spec, ClassLoader parent) {
+        this(spec, parent, null);
+    }
+
+    /**
+     * Constructs a new {@code ModulaClassLoader} that records its classes to, or restores them from,
+     * a {@link ClassDataCache}.
+     *
+     * @param spec the module specification
+     * @param parent the parent class loader
+     * @param classDataCache the class data cache, or {@code null} for none
+     * @throws RuntimeException if any JAR file cannot be opened
+     */
+    public ModulaClassLoader(ModuleSpec spec, ClassLoader parent, ClassDataCache classDataCache) {
+        this(spec, parent, classDataCache, null, null);
+    }
+
+    /**
+     * Constructs a new {@code ModulaClassLoader} whose libraries are taken from, or added to, a
+     * {@link SharedLibraryLayer}, and whose JARs are taken from, or added to, a {@link ClassSourcePool}.
+     *
+     * @param spec the module specification
+     * @param parent the parent class loader
+     * @param classDataCache the class data cache, or {@code null} for none
+     * @param libraryLayer the shared library layer, or {@code null} to load libraries as dependency JARs
+     * @param sourcePool the pool of open JARs, or {@code null} to open them for this loader only
+     * @throws RuntimeException if any JAR file cannot be opened
+     */
+    ModulaClassLoader(ModuleSpec spec, ClassLoader parent, ClassDataCache classDataCache,
+                      SharedLibraryLayer libraryLayer, ClassSourcePool sourcePool) {
+        this(spec, parent, classDataCache, libraryLayer, sourcePool, null);
+    }
+
+    /**
+     * Constructs a new {@code ModulaClassLoader} that looks up the packages it imports in the loaders
+     * of the exporting modules, see {@link ModulaRuntime}.
+     *
+     * @param imports the exporting loaders by imported package, or {@code null} if the module imports nothing
+     */
+    ModulaClassLoader(ModuleSpec spec, ClassLoader parent, ClassDataCache classDataCache,
+                      SharedLibraryLayer libraryLayer, ClassSourcePool sourcePool,
+                      PackageMap<ModulaClassLoader> imports) {
+        this(spec.getName(), parent, ModulePath.open(spec, parent, libraryLayer, sourcePool),
+                DelegationPolicy.compile(spec.getSharedPackages(), spec.getPackageRules()), imports, spec.getExportedClasses(), spec.isMetricsEnabled(), classDataCache, TransformerChain.of(spec));
+    }
+
+    /**
+     * Constructs the loader of a shared library, see {@link SharedLibraryLayer}.
+     */
+    ModulaClassLoader(String name, List<Path> jars, IoEngine ioEngine, DelegationPolicy policy, ClassLoader parent) {
+        this(name, parent, ModulePath.open(jars, ioEngine), policy, null, Collections.<String>emptySet(), false, null, null);
+    }
+
+    private ModulaClassLoader(String moduleName, ClassLoader parent, ModulePath path, DelegationPolicy policy,
+                              PackageMap<ModulaClassLoader> imports, Set<String> exportedClasses, boolean metricsEnabled, ClassDataCache classDataCache,
+                              TransformerChain transformers) {
         super(parent);
-        try {
-            // Adapter JAR
-            URL adapterUrl = spec.getAdapterJar().toUri().toURL();
-            this.adapterJarFile = new JarFile(spec.getAdapterJar().toFile());
-            this.adapterCodeSource = new CodeSource(adapterUrl, (Certificate[]) null);
-            // Dependency JARs
-            this.dependencyJarFiles = new ArrayList<>();
-            this.dependencyCodeSources = new ArrayList<>();
-            for (Path dep : spec.getDependencyJars()) {
-                JarFile _jar = new JarFile(dep.toFile());
-                URL depUrl = dep.toUri().toURL();
-                dependencyJarFiles.add(_jar);
-                dependencyCodeSources.add(new CodeSource(depUrl, (java.security.cert.Certificate[]) null));
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Cannot open JAR", e);
-        }
-        this.sharedPackages = ClassLoaderUtil.normalizeSharedPackages(spec.getSharedPackages());
-        this.exportedClasses = Collections.unmodifiableSet(spec.getExportedClasses());
+        this.sources = path.sources;
+        this.libraries = path.libraries;
+        this.libraryLayer = path.libraryLayer;
+        this.sourcePool = path.sourcePool;
+        this.domains = domainsOf(sources);
+        this.classIndex = ClassIndex.build(sources);
+        this.resourceIndex = ResourceIndex.build(sources);
+        this.policy = policy;
+        this.imports = imports;
+        this.exportedClasses = Collections.unmodifiableSet(exportedClasses);
+        this.moduleName = moduleName;
+        this.resourceUrls = new ModuleResourceUrls(moduleName, sources, resourceIndex);
+        this.metrics = new ModuleMetrics(metricsEnabled);
+        this.classDataCache = classDataCache;
+        this.transformers = transformers;
+        this.cacheKey = classDataCache == null ? null : cacheKeyOf(path, transformers);
+        this.restored = cacheKey != null && classDataCache.getMode() == ClassDataCache.Mode.RESTORE
+                ? classDataCache.read(moduleName, cacheKey) : null;
+        this.recorded = cacheKey != null && classDataCache.getMode() == ClassDataCache.Mode.RECORD
+                ? Collections.synchronizedList(new ArrayList<ClassDataCache.Recorded>()) : null;
     }
 
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // Step 0.1: an imported package is the exporting module's to load, under its own locks
+        if (imports != null) {
+            ModulaClassLoader exporter = imports.get(name);
+            if (exporter != null) {
+                return loadImportedClass(exporter, name, resolve);
+            }
+        }
+        DelegationPolicy.Route route = policy.route(name);
+        // Step 0.2: JDK classes go to the platform loader, without a lock or a look at the module's JARs
+        if (route == DelegationPolicy.Route.PLATFORM) {
+            Class<?> platformClass = loadPlatformClass(name);
+            if (platformClass != null) {
+                return platformClass;
+            }
+        }
         synchronized (getClassLoadingLock(name)) {
             // Step 1: check if loaded?
             Class<?> loadedClass = findLoadedClass(name);
@@ -104,94 +299,679 @@ public final class ModulaClassLoader extends ClassLoader {
                 return loadedClass;
             }
 
-            // Step 2: if shared package，use parent classloader(Main app classload) to load
-            if (isSharedPackage(name)) {
-                return super.loadClass(name, resolve);
+            // Step 2: if the package's rule allows it，use parent classloader(Main app classload) to load
+            switch (route) {
+                case PARENT_FIRST:
+                    try {
+                        Class<?> clazz = loadParentClass(name, resolve);
+                        if (metrics.isEnabled()) {
+                            metrics.sharedDelegation();
+                        }
+                        return clazz;
+                    } catch (ClassNotFoundException ignored) {
+                        // not shared after all, the module may have it
+                    }
+                    try {
+                        Class<?> clazz = findClass(name);
+                        if (resolve) resolveClass(clazz);
+                        return clazz;
+                    } catch (ClassNotFoundException e) {
+                        if (metrics.isEnabled()) {
+                            metrics.classNotFound();
+                        }
+                        throw new ClassNotFoundException("Can't load class "+ name +" from parent or module",e);
+                    }
+                case PARENT_ONLY:
+                    if (metrics.isEnabled()) {
+                        metrics.sharedDelegation();
+                    }
+                    return loadParentClass(name, resolve);
+                case CHILD_FIRST:
+                    try {
+                        Class<?> clazz = findClass(name);
+                        if (resolve) resolveClass(clazz);
+                        return clazz;
+                    } catch (NotInModuleException e) {
+                        if (metrics.isEnabled()) {
+                            metrics.sharedDelegation();
+                        }
+                        return loadParentClass(name, resolve);
+                    }
+                default:
+                    break;
             }
 
-            // Step 3: others, use module self classloader
+            // Step 3: others, use module self classloader; a repeated probe for a missing class, e.g. an
+            // optional dependency, fails cheaply
+            if (knownMisses.contains(name)) {
+                if (metrics.isEnabled()) {
+                    metrics.classNotFound();
+                }
+                throw new RepeatedMissException(name);
+            }
             try {
                 return findClass(name);
             } catch (ClassNotFoundException e) {
+                if (metrics.isEnabled()) {
+                    metrics.classNotFound();
+                }
+                rememberMiss(name);
                 throw new ClassNotFoundException("Can't load class "+ name +" from module",e);
             }
         }
     }
 
     /**
-     * Attempts to find and define a class in module, first adapter jar,then d8y.
+     * Attempts to find and define a class in module, using the prebuilt class index.
      *
      * @param name the fully qualified class name
      * @return the loaded and defined class
      * @throws ClassNotFoundException if the class is not found in any JAR
-     * @throws SecurityException if the class is in the adapter JAR but not exported or shared
      */
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
-        // Step3.1. 从 adapter JAR 中加载
-        byte[] bytes = loadClassData(adapterJarFile, name);
-        if (bytes != null) {
-            return defineClass(name, bytes, 0, bytes.length, new ProtectionDomain(adapterCodeSource, null));
+        // Step3.0. a class recorded by a training run is defined straight from the cache file
+        if (restored != null) {
+            ClassDataCache.Cached cached = restored.get(name);
+            if (cached != null) {
+                SourceDomain domain = domains.get(sources.get(cached.source));
+                return define(name, cached.bytes.duplicate(), domain, true);
+            }
+        }
+        // Step3.1. one index lookup covers the adapter JAR and all dependency JARs
+        ClassSource.Entry entry = classIndex.get(name);
+        if (entry == null) {
+            // Step3.2. then the shared libraries, which define their classes once for all modules
+            for (SharedLibraryLayer.Library library : libraries) {
+                Class<?> clazz = library.loader.loadLibraryClass(name);
+                if (clazz != null) {
+                    return clazz;
+                }
+            }
+            throw new NotInModuleException(name);
+        }
+        ByteBuffer bytes;
+        if (metrics.isEnabled()) {
+            long start = System.nanoTime();
+            bytes = loadClassData(entry, name);
+            metrics.classRead(bytes.remaining(), System.nanoTime() - start);
+        } else {
+            bytes = loadClassData(entry, name);
+        }
+        // Step3.3. the module's transformers rewrite the class, or their cached output is used
+        byte[] transformed = null;
+        if (transformers != null) {
+            ByteBuffer output = transform(name, bytes);
+            if (output != bytes) {
+                transformed = output.array();
+                bytes = output;
+            }
+        }
+        SourceDomain domain = domains.get(entry.getSource());
+        Class<?> clazz = define(name, bytes, domain, false);
+        if (recorded != null) {
+            recorded.add(new ClassDataCache.Recorded(name, domain.index, entry, transformed));
+        }
+        return clazz;
+    }
+
+    private ByteBuffer transform(String name, ByteBuffer bytes) {
+        try {
+            return transformers.transform(name, bytes);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to transform class: " + name, e);
+        }
+    }
+
+    /**
+     * Returns the names of the classes this loader can define from the class data cache.
+     *
+     * @return the restored class names; empty unless the cache was restored
+     */
+    Set<String> getRestoredClassNames() {
+        return restored == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(restored.keySet());
+    }
+
+    /**
+     * Loads a class of this library loader for a module that found it in none of its own sources.
+     *
+     * @return the class, or {@code null} if the library does not contain it
+     */
+    Class<?> loadLibraryClass(String name) {
+        if (classIndex.get(name) == null) {
+            return null;
+        }
+        try {
+            return loadClass(name, false);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private Class<?> define(String name, ByteBuffer bytes, SourceDomain domain, boolean restored) {
+        definePackageOf(name, domain);
+        if (!metrics.isEnabled()) {
+            return defineClass(name, bytes, domain.protectionDomain);
+        }
+        long start = System.nanoTime();
+        Class<?> clazz = defineClass(name, bytes, domain.protectionDomain);
+        metrics.classDefined(System.nanoTime() - start, restored);
+        return clazz;
+    }
+
+    /**
+     * Defines the package of a class from the manifest of its source, unless already defined, and checks
+     * that a sealed package is not extended from another source.
+     *
+     * @throws SecurityException if the package is sealed by another source
+     */
+    private void definePackageOf(String className, SourceDomain domain) {
+        int dot = className.lastIndexOf('.');
+        if (dot < 0) {
+            return;
+        }
+        Package pkg = domain.lastPackage;
+        if (pkg == null || pkg.getName().length() != dot || !className.startsWith(pkg.getName())) {
+            String packageName = className.substring(0, dot);
+            pkg = definedPackages.get(packageName);
+            if (pkg == null) {
+                pkg = definePackage(packageName, domain);
+            }
+            domain.lastPackage = pkg;
+        }
+        if (pkg.isSealed() && !pkg.isSealed(domain.source.getLocation())) {
+            throw new SecurityException("Sealing violation: package " + pkg.getName() + " is sealed");
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Package definePackage(String packageName, SourceDomain domain) {
+        Manifest manifest = domain.manifest();
+        Package pkg;
+        try {
+            if (manifest == null) {
+                pkg = definePackage(packageName, null, null, null, null, null, null, null);
+            } else {
+                Attributes main = manifest.getMainAttributes();
+                Attributes own = manifest.getAttributes(packageName.replace('.', '/') + '/');
+                boolean sealed = "true".equalsIgnoreCase(attribute(Attributes.Name.SEALED, own, main));
+                pkg = definePackage(packageName,
+                        attribute(Attributes.Name.SPECIFICATION_TITLE, own, main),
+                        attribute(Attributes.Name.SPECIFICATION_VERSION, own, main),
+                        attribute(Attributes.Name.SPECIFICATION_VENDOR, own, main),
+                        attribute(Attributes.Name.IMPLEMENTATION_TITLE, own, main),
+                        attribute(Attributes.Name.IMPLEMENTATION_VERSION, own, main),
+                        attribute(Attributes.Name.IMPLEMENTATION_VENDOR, own, main),
+                        sealed ? domain.source.getLocation() : null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Defined concurrently by another class of the package, or, on Java 8, visible from the parent.
+            Package concurrent = definedPackages.get(packageName);
+            if (concurrent != null) {
+                return concurrent;
+            }
+            pkg = getPackage(packageName);
+            if (pkg == null) {
+                throw e;
+            }
+        }
+        Package previous = definedPackages.putIfAbsent(packageName, pkg);
+        return previous != null ? previous : pkg;
+    }
+
+    /**
+     * Returns a package attribute from the package's own manifest section, else from the main section.
+     */
+    private static String attribute(Attributes.Name name, Attributes own, Attributes main) {
+        String value = own == null ? null : own.getValue(name);
+        return value != null ? value : main.getValue(name);
+    }
+
+    private static Map<ClassSource, SourceDomain> domainsOf(List<ClassSource> sources) {
+        Map<ClassSource, SourceDomain> domains = new IdentityHashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            domains.put(sources.get(i), new SourceDomain(sources.get(i), i));
+        }
+        return domains;
+    }
+
+    /**
+     * Finds a resource where the rule of its directory, read as a package, says: for a shared package in the
+     * parent first, else in the module only by default; see the class comment.
+     *
+     * @param name the resource name, e.g. {@code META-INF/spring.factories}
+     * @return the resource URL, or {@code null} if not found
+     */
+    @Override
+    public URL getResource(String name) {
+        ModulaClassLoader exporter = exporterOf(name);
+        if (exporter != null) {
+            return exporter.getResource(name);
+        }
+        switch (policy.resourceRoute(name)) {
+            case PLATFORM:
+            case PARENT_FIRST:
+                return super.getResource(name);
+            case PARENT_ONLY:
+                return parentForResources().getResource(name);
+            case CHILD_FIRST:
+                URL url = findResource(name);
+                return url != null ? url : parentForResources().getResource(name);
+            default:
+                return findResource(name);
+        }
+    }
+
+    /**
+     * Finds all resources of a name: those of the parent, then those of the module, for a shared package;
+     * else, by default, only those of the module, in module path order. {@link DelegationRule#CHILD_FIRST}
+     * lists those of the module first.
+     *
+     * @param name the resource name, e.g. {@code META-INF/services/java.sql.Driver}
+     * @return the resource URLs
+     * @throws IOException if the parent fails to list its resources
+     */
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        ModulaClassLoader exporter = exporterOf(name);
+        if (exporter != null) {
+            return exporter.getResources(name);
+        }
+        switch (policy.resourceRoute(name)) {
+            case PLATFORM:
+            case PARENT_FIRST:
+                return super.getResources(name);
+            case PARENT_ONLY:
+                return parentForResources().getResources(name);
+            case CHILD_FIRST:
+                List<URL> urls = Collections.list(findResources(name));
+                urls.addAll(Collections.list(parentForResources().getResources(name)));
+                return Collections.enumeration(urls);
+            default:
+                return findResources(name);
         }
+    }
 
-        // Step3.2. 从 dependency JARs 中加载（私有依赖）
-        for (int i = 0; i < dependencyJarFiles.size(); i++) {
-            JarFile jar = dependencyJarFiles.get(i);
-            byte[] _bytes = loadClassData(jar, name);
-            if (_bytes != null) {
-                CodeSource cs_dep = dependencyCodeSources.get(i);
-                return defineClass(name, _bytes, 0, _bytes.length, new ProtectionDomain(cs_dep, null));
+    /**
+     * Opens a resource; a module resource is streamed straight from its entry, without creating a URL.
+     *
+     * @param name the resource name
+     * @return the stream, or {@code null} if not found
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        ModulaClassLoader exporter = exporterOf(name);
+        if (exporter != null) {
+            return exporter.getResourceAsStream(name);
+        }
+        switch (policy.resourceRoute(name)) {
+            case PLATFORM:
+            case PARENT_FIRST:
+                return super.getResourceAsStream(name);
+            case PARENT_ONLY:
+                return parentForResources().getResourceAsStream(name);
+            case CHILD_FIRST:
+                InputStream in = openModuleResource(name);
+                return in != null ? in : parentForResources().getResourceAsStream(name);
+            default:
+                return openModuleResource(name);
+        }
+    }
+
+    private InputStream openModuleResource(String name) {
+        ClassSource.Entry entry = resourceIndex.first(name);
+        for (int i = 0; entry == null && i < libraries.size(); i++) {
+            entry = libraries.get(i).loader.resourceIndex.first(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.openStream();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        ClassSource.Entry entry = resourceIndex.first(name);
+        if (entry != null) {
+            return resourceUrls.toUrl(entry);
+        }
+        for (SharedLibraryLayer.Library library : libraries) {
+            URL url = library.loader.findResource(name);
+            if (url != null) {
+                return url;
             }
         }
-        throw new ClassNotFoundException(name);
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<ClassSource.Entry> entries = resourceIndex.all(name);
+        List<URL> urls = new ArrayList<>(entries.size());
+        for (ClassSource.Entry entry : entries) {
+            urls.add(resourceUrls.toUrl(entry));
+        }
+        for (SharedLibraryLayer.Library library : libraries) {
+            urls.addAll(Collections.list(library.loader.findResources(name)));
+        }
+        return Collections.enumeration(urls);
     }
 
     /**
-     * Checks whether the given class belongs to a shared package.
+     * Returns the class loading metrics of this loader; all zero if the spec disabled them.
      *
-     * @param className the fully qualified class name
-     * @return {@code true} if the class's package is shared, {@code false} otherwise
+     * @return the metrics
+     */
+    public ModuleMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Loads a class of a JDK package from the platform class loader.
+     *
+     * @return the class, or {@code null} to look for it in the module, which only packages outside
+     *         {@code java.*} may do
+     * @throws ClassNotFoundException if a {@code java.*} class does not exist
      */
-    private boolean isSharedPackage(String className) {
-        int lastDot = className.lastIndexOf('.');
-        String packageName = (lastDot == -1) ? "" : className.substring(0, lastDot) + ".";
-        for (String sharedPkg : sharedPackages) {
-            if (packageName.startsWith(sharedPkg)) {
-                return true;
+    private Class<?> loadPlatformClass(String name) throws ClassNotFoundException {
+        try {
+            Class<?> clazz = DelegationPolicy.loadPlatformClass(name);
+            if (metrics.isEnabled()) {
+                metrics.sharedDelegation();
+            }
+            return clazz;
+        } catch (ClassNotFoundException e) {
+            if (!name.startsWith("java.")) {
+                return null;
+            }
+            if (metrics.isEnabled()) {
+                metrics.classNotFound();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remembers a class the module does not have, forgetting the oldest names beyond {@link #MAX_KNOWN_MISSES}.
+     */
+    private void rememberMiss(String name) {
+        if (knownMisses.add(name)) {
+            knownMissOrder.add(name);
+            while (knownMisses.size() > MAX_KNOWN_MISSES) {
+                String oldest = knownMissOrder.poll();
+                if (oldest == null) {
+                    break;
+                }
+                knownMisses.remove(oldest);
             }
         }
-        return false;
     }
 
     /**
-     * Loads the bytecode of a class from the given JAR file.
+     * Loads a class of an imported package from the exporting module's loader.
+     */
+    private Class<?> loadImportedClass(ModulaClassLoader exporter, String name, boolean resolve)
+            throws ClassNotFoundException {
+        if (metrics.isEnabled()) {
+            metrics.sharedDelegation();
+        }
+        Class<?> clazz = exporter.loadClass(name);
+        if (resolve) resolveClass(clazz);
+        return clazz;
+    }
+
+    /**
+     * Returns the loader of the module a resource's package is imported from, or {@code null} if it is not imported.
+     */
+    private ModulaClassLoader exporterOf(String resourceName) {
+        return imports != null ? imports.getForResource(resourceName) : null;
+    }
+
+    /**
+     * Loads a class from the parent only; the bootstrap loader stands in for a {@code null} parent.
+     */
+    private Class<?> loadParentClass(String name, boolean resolve) throws ClassNotFoundException {
+        ClassLoader parent = getParent();
+        Class<?> clazz = parent != null ? parent.loadClass(name) : Class.forName(name, false, null);
+        if (resolve) resolveClass(clazz);
+        return clazz;
+    }
+
+    /**
+     * Returns the parent, or the platform class loader if the parent is the bootstrap loader.
+     */
+    private ClassLoader parentForResources() {
+        ClassLoader parent = getParent();
+        return parent != null ? parent : DelegationPolicy.platformLoader();
+    }
+
+    /**
+     * Loads the bytecode of a class from its indexed entry.
      *
-     * @param jarFile the JAR file to read from
+     * @param entry the indexed entry of the class
      * @param className the fully qualified class name
-     * @return the class bytecode as a byte array, or {@code null} if not found
+     * @return the class bytecode; exactly the remaining bytes of the buffer
      * @throws RuntimeException if an I/O error occurs
      */
-    private byte[] loadClassData(JarFile jarFile, String className) {
-        String path = className.replace('.', '/') + ".class";
-        JarEntry entry = jarFile.getJarEntry(path);
-        if (entry == null) return null;
-        try (InputStream is = jarFile.getInputStream(entry);
-             ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-            byte[] data = new byte[8192];
-            int nRead;
-            while ((nRead = is.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            return buffer.toByteArray();
+    private ByteBuffer loadClassData(ClassSource.Entry entry, String className) {
+        try {
+            return entry.read();
         } catch (IOException e) {
             throw new RuntimeException("Failed to read class: " + className, e);
         }
     }
 
+    /**
+     * Thrown by {@link #findClass(String)} when the index has no such class. Without a stack trace:
+     * {@link #loadClass(String, boolean)} wraps it into an exception that has one.
+     */
+    private static final class NotInModuleException extends ClassNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        NotInModuleException(String name) {
+            super(name);
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Thrown for a class that was already not found before; the first lookup threw an exception with the full stack.
+     */
+    private static final class RepeatedMissException extends ClassNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        RepeatedMissException(String name) {
+            super("Can't load class " + name + " from module (looked up before, stack trace omitted)");
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Closes the module's JARs, or hands them back to the runtime's pool, and releases its shared libraries.
+     * In a {@link ClassDataCache.Mode#RECORD} run, the recorded classes are linked and written to the class
+     * data cache first.
+     *
+     * @throws IOException if the cache file cannot be written or a JAR cannot be closed
+     */
     public void close() throws IOException {
-        adapterJarFile.close();
-        for (JarFile jar : dependencyJarFiles) {
-            jar.close();
+        try {
+            if (recorded != null) {
+                linkRecorded();
+                synchronized (recorded) {
+                    classDataCache.write(moduleName, cacheKey, new ArrayList<>(recorded));
+                }
+            }
+        } finally {
+            resourceUrls.close();
+            try {
+                for (ClassSource source : sources) {
+                    if (sourcePool != null) {
+                        sourcePool.release(source);
+                    } else {
+                        source.close();
+                    }
+                }
+            } finally {
+                for (SharedLibraryLayer.Library library : libraries) {
+                    libraryLayer.release(library);
+                }
+            }
+        }
+    }
+
+    /**
+     * Links every recorded class, so that a dynamic CDS archive dumped at exit includes it: the JVM only
+     * archives linked classes of custom loaders. Reflection links a class without initializing it;
+     * verification may load further classes, so this repeats until no new class is recorded.
+     */
+    private void linkRecorded() {
+        int linked = 0;
+        while (true) {
+            List<ClassDataCache.Recorded> pending;
+            synchronized (recorded) {
+                if (linked == recorded.size()) {
+                    return;
+                }
+                pending = new ArrayList<>(recorded.subList(linked, recorded.size()));
+            }
+            for (ClassDataCache.Recorded r : pending) {
+                Class<?> c = findLoadedClass(r.name);
+                try {
+                    if (c != null) {
+                        c.getDeclaredFields();
+                    }
+                } catch (LinkageError | SecurityException e) {
+                    // not linkable now (e.g. optional dependency missing): CDS will skip it, the cache still has it
+                }
+            }
+            linked += pending.size();
+        }
+    }
+
+    /**
+     * Returns the key of the module path in the class data cache, or {@code null} if it cannot be cached.
+     */
+    private static long[] cacheKeyOf(ModulePath path, TransformerChain transformers) {
+        long[] key;
+        try {
+            key = ClassDataCache.keyOf(path.files, path.checksums);
+        } catch (IOException e) {
+            return null;
+        }
+        if (key == null || transformers == null) {
+            return key;
+        }
+        // The cache holds transformed classes: a different chain must not restore them.
+        long[] withChain = Arrays.copyOf(key, key.length + 1);
+        withChain[key.length] = transformers.fingerprint();
+        return withChain;
+    }
+
+    /**
+     * The opened sources and acquired libraries of a loader, before it is constructed.
+     */
+    private static final class ModulePath {
+        final List<ClassSource> sources = new ArrayList<>();
+        final List<SharedLibraryLayer.Library> libraries = new ArrayList<>();
+        /**
+         * The files behind {@link #sources}, keying the class data cache.
+         */
+        final List<Path> files = new ArrayList<>();
+        /**
+         * Checksums of {@link #files} known without reading them: those of module bundles, from their index.
+         */
+        final Map<Path, Long> checksums = new HashMap<>();
+        SharedLibraryLayer libraryLayer;
+        ClassSourcePool sourcePool;
+
+        static ModulePath open(ModuleSpec spec, ClassLoader parent, SharedLibraryLayer libraryLayer,
+                               ClassSourcePool sourcePool) {
+            ModulePath path = new ModulePath();
+            path.sourcePool = sourcePool;
+            try {
+                // Adapter JAR first, then dependency JARs, then libraries: this is the "first JAR wins" order.
+                if (spec.getModuleArchive() != null) {
+                    ModuleArchive archive = ModuleArchive.open(spec.getModuleArchive(), spec.getAdapterJar(),
+                            spec.getDependencyJars());
+                    path.sources.addAll(archive.getSources());
+                    path.files.add(spec.getModuleArchive());
+                    if (archive.getBundle() != null) {
+                        path.checksums.put(spec.getModuleArchive(), archive.getBundle().checksum());
+                    }
+                } else {
+                    path.add(spec.getAdapterJar(), spec.getIoEngine());
+                    for (Path dep : spec.getDependencyJars()) {
+                        path.add(dep, spec.getIoEngine());
+                    }
+                }
+                for (List<Path> jars : spec.getLibraries()) {
+                    SharedLibraryLayer.Library library = libraryLayer == null ? null
+                            : libraryLayer.acquire(jars, spec, parent);
+                    if (library != null) {
+                        path.libraries.add(library);
+                        path.libraryLayer = libraryLayer;
+                    } else {
+                        for (Path jar : jars) {
+                            path.add(jar, spec.getIoEngine());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                path.closeQuietly();
+                throw new RuntimeException("Cannot open JAR", e);
+            }
+            return path;
+        }
+
+        static ModulePath open(List<Path> jars, IoEngine ioEngine) {
+            ModulePath path = new ModulePath();
+            try {
+                for (Path jar : jars) {
+                    path.add(jar, ioEngine);
+                }
+            } catch (Exception e) {
+                path.closeQuietly();
+                throw new RuntimeException("Cannot open JAR", e);
+            }
+            return path;
+        }
+
+        private void add(Path file, IoEngine ioEngine) throws IOException {
+            sources.add(sourcePool != null ? sourcePool.acquire(file, ioEngine) : ClassSource.open(file, ioEngine));
+            files.add(file);
+        }
+
+        private void closeQuietly() {
+            for (ClassSource source : sources) {
+                try {
+                    if (sourcePool != null) {
+                        sourcePool.release(source);
+                    } else {
+                        source.close();
+                    }
+                } catch (IOException ignored) {
+                    // already failing, keep the original cause
+                }
+            }
+            for (SharedLibraryLayer.Library library : libraries) {
+                try {
+                    libraryLayer.release(library);
+                } catch (IOException ignored) {
+                    // already failing, keep the original cause
+                }
+            }
         }
     }
 
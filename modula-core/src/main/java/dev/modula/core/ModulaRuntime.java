@@ -2,49 +2,389 @@
 // Copyright (c) 2015 Modula Authors. All rights reserved.
 package dev.modula.core;
 
+import dev.modula.util.PackageMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * The entry point for loading and managing isolated modules at runtime.
  * It uses a custom class loader to load modules defined by {@link ModuleSpec},
  * providing classpath isolation and controlled class exposure.
+ *
+ * <p>All modules of a runtime share their open JAR files (see {@link ClassSourcePool}): a JAR used by several
+ * modules, or kept across a reload, is opened and its directory parsed once, and closed with its last module.</p>
+ *
+ * <p>A module may import packages exported by other modules of the runtime (see
+ * {@link ModuleSpec.Builder#importPackages(String, String...)}); {@link #loadAll(Collection, Executor)} loads a
+ * set of such modules in parallel, each once the modules it imports from are loaded, after checking every
+ * import up front.</p>
  */
 public final class ModulaRuntime {
+
+    /**
+     * Tracks the loaders of closed modules until they are garbage collected.
+     */
+    private final LoaderLeakDetector leakDetector;
+
+    /**
+     * Records or restores the classes of loaded modules; {@code null} if class data caching is off.
+     */
+    private final ClassDataCache classDataCache;
+
+    /**
+     * Shares the class loaders of libraries between modules; {@code null} if each module loads its own.
+     */
+    private final SharedLibraryLayer sharedLibraryLayer;
+
+    /**
+     * The JAR files opened by the runtime's module loaders, shared between them.
+     */
+    private final ClassSourcePool sourcePool = new ClassSourcePool();
+
+    /**
+     * The most recently loaded, not yet closed version of each module, by name; imports resolve against it.
+     */
+    private final ConcurrentMap<String, IsolatedModule> modules = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a runtime whose leak detector reports loaders still alive one minute after their module was closed.
+     */
+    public ModulaRuntime() {
+        this(new LoaderLeakDetector(1, TimeUnit.MINUTES));
+    }
+
+    /**
+     * Creates a runtime that hands the loaders of closed modules to the given leak detector.
+     *
+     * @param leakDetector the leak detector
+     */
+    public ModulaRuntime(LoaderLeakDetector leakDetector) {
+        this(leakDetector, null);
+    }
+
+    /**
+     * Creates a runtime whose module loaders record their classes to, or restore them from, a class data cache.
+     *
+     * @param leakDetector the leak detector
+     * @param classDataCache the class data cache, or {@code null} for none
+     */
+    public ModulaRuntime(LoaderLeakDetector leakDetector, ClassDataCache classDataCache) {
+        this(leakDetector, classDataCache, null);
+    }
+
+    /**
+     * Creates a runtime whose modules share the loaders of identical libraries through a {@link SharedLibraryLayer}.
+     *
+     * @param leakDetector the leak detector
+     * @param classDataCache the class data cache, or {@code null} for none
+     * @param sharedLibraryLayer the shared library layer, or {@code null} to load libraries into each module
+     */
+    public ModulaRuntime(LoaderLeakDetector leakDetector, ClassDataCache classDataCache,
+                         SharedLibraryLayer sharedLibraryLayer) {
+        this.leakDetector = leakDetector;
+        this.classDataCache = classDataCache;
+        this.sharedLibraryLayer = sharedLibraryLayer;
+    }
+
+    /**
+     * Returns the detector tracking the class loaders of closed modules.
+     *
+     * @return the leak detector
+     */
+    public LoaderLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Returns the layer sharing library loaders between modules.
+     *
+     * @return the shared library layer, or {@code null} if libraries are not shared
+     */
+    public SharedLibraryLayer getSharedLibraryLayer() {
+        return sharedLibraryLayer;
+    }
+
+    /**
+     * Returns the most recently loaded version of a module, unless it was closed.
+     *
+     * @param name the module name
+     * @return the module, or {@code null} if none of that name is loaded
+     */
+    public IsolatedModule getModule(String name) {
+        return modules.get(name);
+    }
+
     /**
      * Loads a module based on the given specification and returns an {@link IsolatedModule}
      * that allows instantiation of exported classes.
      *
+     * <p>The modules it imports from must already be loaded by this runtime; their current versions serve its
+     * imported packages. The module then becomes the current version of its name, e.g. the one that modules
+     * loaded later import from.</p>
+     *
      * @param spec the module specification
      * @return an isolated module instance
+     * @throws IllegalStateException if a module it imports from is not loaded or does not export an imported package
      * @throws RuntimeException if module loading fails
      */
     public IsolatedModule load(ModuleSpec spec) {
+        PackageMap<ModulaClassLoader> imports = importsOf(spec);
+        IsolatedModule module;
         try {
             ModulaClassLoader loader = new ModulaClassLoader(
                     spec,
-                    getClass().getClassLoader()
+                    getClass().getClassLoader(),
+                    classDataCache,
+                    sharedLibraryLayer,
+                    sourcePool,
+                    imports
             );
-            return new IsolatedModule(loader, spec.getExportedClasses());
+            module = new IsolatedModule(spec, loader, leakDetector, modules);
         } catch (Exception e) {
             throw new RuntimeException("Failed to load module: " + spec.getName(), e);
         }
+        modules.put(spec.getName(), module);
+        return module;
+    }
+
+    /**
+     * Checks the imports of a set of modules against each other and the modules already loaded, and orders
+     * them for loading.
+     *
+     * @param specs the module specifications
+     * @return the specs, each after the ones it imports from
+     * @throws IllegalArgumentException if two specs have the same name
+     * @throws IllegalStateException if a module imports from a module that is neither in the set nor loaded, or
+     *         a package that module does not export, or if the imports form a cycle
+     */
+    public List<ModuleSpec> resolve(Collection<ModuleSpec> specs) {
+        return ModuleGraph.resolve(specs, name -> {
+            IsolatedModule loaded = modules.get(name);
+            return loaded != null ? loaded.getSpec() : null;
+        });
+    }
+
+    /**
+     * Loads a set of modules that may import from each other. All imports are checked first, see
+     * {@link #resolve(Collection)}; then every module is loaded on {@code executor} as soon as the modules it
+     * imports from are, so that independent modules load in parallel.
+     *
+     * <p>If a module fails to load, the modules importing from it and those not started yet are not loaded,
+     * the modules of the set already loaded are closed, and the failure is thrown.</p>
+     *
+     * @param specs the module specifications
+     * @param executor the pool to load on
+     * @return the loaded modules by name, in load order
+     * @throws IllegalArgumentException if two specs have the same name
+     * @throws IllegalStateException if the imports do not resolve
+     * @throws RuntimeException if a module fails to load
+     */
+    public Map<String, IsolatedModule> loadAll(Collection<ModuleSpec> specs, Executor executor) {
+        List<ModuleSpec> order = resolve(specs);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Map<String, CompletableFuture<IsolatedModule>> loading = new LinkedHashMap<>();
+        for (ModuleSpec spec : order) {
+            List<CompletableFuture<IsolatedModule>> exporters = new ArrayList<>();
+            for (String imported : spec.getImports().keySet()) {
+                CompletableFuture<IsolatedModule> exporter = loading.get(imported);
+                if (exporter != null) {
+                    exporters.add(exporter);
+                }
+            }
+            loading.put(spec.getName(), CompletableFuture.allOf(exporters.toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(v -> {
+                        if (failure.get() != null) {
+                            throw new CancellationException("Not loaded after an earlier failure: " + spec.getName());
+                        }
+                        try {
+                            return load(spec);
+                        } catch (RuntimeException | Error e) {
+                            failure.compareAndSet(null, e);
+                            throw e;
+                        }
+                    }, executor));
+        }
+        Map<String, IsolatedModule> loaded = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<IsolatedModule>> entry : loading.entrySet()) {
+            try {
+                loaded.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException | CancellationException e) {
+                failure.compareAndSet(null, e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        Throwable failed = failure.get();
+        if (failed == null) {
+            return Collections.unmodifiableMap(loaded);
+        }
+        for (IsolatedModule module : loaded.values()) {
+            try {
+                module.close(0, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failed instanceof Error) {
+            throw (Error) failed;
+        }
+        throw failed instanceof RuntimeException ? (RuntimeException) failed
+                : new RuntimeException("Failed to load modules", failed);
+    }
+
+    /**
+     * Finds the loaders serving the packages a module imports.
+     *
+     * @return the loaders by imported package, or {@code null} if the module imports nothing
+     */
+    private PackageMap<ModulaClassLoader> importsOf(ModuleSpec spec) {
+        if (spec.getImports().isEmpty()) {
+            return null;
+        }
+        PackageMap.Builder<ModulaClassLoader> imports = PackageMap.builder();
+        for (Map.Entry<String, Set<String>> imported : spec.getImports().entrySet()) {
+            IsolatedModule exporter = modules.get(imported.getKey());
+            ModulaClassLoader loader = exporter != null ? exporter.loader : null;
+            if (loader == null) {
+                throw new IllegalStateException("Module '" + spec.getName() + "' imports from module '"
+                        + imported.getKey() + "', which is not loaded");
+            }
+            ModuleGraph.checkExports(spec, exporter.getSpec(), imported.getValue());
+            for (String pkg : ModuleGraph.importedPackages(imported.getValue(), exporter.getSpec())) {
+                // only the JDK defines java.*
+                if (!pkg.startsWith("java.")) {
+                    imports.prefix(pkg + ".", loader);
+                }
+            }
+        }
+        return imports.build();
     }
 
     /**
      * Represents an isolated module that provides controlled access to its exported classes.
      * Instances of exported classes can be obtained via {@link #getInstance(String, Class)}.
+     *
+     * <p>The first request for an exported class loads it and caches a {@link MethodHandle} to its
+     * no-arg constructor; later requests skip the export check, class loading and reflection.</p>
+     *
+     * <p>A module can be closed to release its class loader, e.g. when it is replaced by a new version.
+     * Calls made through {@link #call} (or bracketed by {@link #tryAcquire()} and {@link #release()})
+     * are counted as in flight, and {@link #close(long, TimeUnit)} waits for them to finish before closing
+     * the loader. Instances handed out earlier keep working only as long as they need no further classes,
+     * so callers should not hold on to them across a reload.</p>
+     *
+     * <p>A new module can be warmed up with {@link #warmUp(ModuleWarmup, Executor)} before it is handed out.</p>
+     *
+     * <p>Modules that imported packages from a module keep looking them up in its loader after it is closed, so
+     * they are to be reloaded or closed with it; until then the loader is reported by the leak detector.</p>
      */
     public static final class IsolatedModule {
-        private final ModulaClassLoader loader;
+
+        /**
+         * Number of classes loaded by one warm-up task.
+         */
+        private static final int WARMUP_BATCH = 32;
+
+        private final ModuleSpec spec;
+        private final LoaderLeakDetector leakDetector;
         private final Set<String> exportedClasses;
+        private final ModuleMetrics metrics;
+        private final FileStamps files;
+
+        /**
+         * The runtime's current modules, which the module leaves when it is closed.
+         */
+        private final Map<String, IsolatedModule> current;
+
+        /**
+         * The module's loader; cleared on close so that a retained module does not pin it.
+         */
+        private volatile ModulaClassLoader loader;
+        private final ConcurrentMap<String, ExportedClass> resolved = new ConcurrentHashMap<>();
+
+        /**
+         * Number of acquired, not yet released calls.
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Object drainLock = new Object();
+        private volatile boolean closed;
 
-        IsolatedModule(ModulaClassLoader loader, Set<String> exportedClasses) {
+        IsolatedModule(ModuleSpec spec, ModulaClassLoader loader, LoaderLeakDetector leakDetector,
+                       Map<String, IsolatedModule> current) {
+            this.spec = spec;
             this.loader = loader;
-            this.exportedClasses = exportedClasses;
+            this.leakDetector = leakDetector;
+            this.current = current;
+            this.exportedClasses = spec.getExportedClasses();
+            this.metrics = loader.getMetrics();
+            this.files = FileStamps.of(spec);
+        }
+
+        /**
+         * Returns the name of the module.
+         *
+         * @return the module name
+         */
+        public String getName() {
+            return spec.getName();
+        }
+
+        /**
+         * Returns the specification the module was loaded from.
+         *
+         * @return the module spec
+         */
+        public ModuleSpec getSpec() {
+            return spec;
+        }
+
+        /**
+         * Returns the module's JAR files and archive that were overwritten in place since this version was
+         * loaded. The version reads its files until it is closed, and archives and {@link IoEngine#MAPPED} JARs
+         * are memory-mapped, so its reads of such a file may fail, or crash the JVM. New versions of a file
+         * should be written to a new file and renamed into place, which is not reported.
+         *
+         * @return the overwritten files, empty if there are none or the file system cannot tell
+         */
+        public List<Path> getFilesChangedInPlace() {
+            return files.changedInPlace();
+        }
+
+        /**
+         * Returns the class loading metrics of the module.
+         *
+         * @return the metrics; they stop changing once the module is closed
+         */
+        public ModuleMetrics getMetrics() {
+            return metrics;
         }
 
         /**
          * Instantiates an exported class by name and casts it to the specified interface type.
+         * Same as {@link #getInstance(String, Class, InstanceScope)} with {@link InstanceScope#PROTOTYPE}.
          *
          * <p>The class must be listed in the module's exported classes, have a public no-arg constructor,
          * and implement the given interface type.</p>
@@ -56,22 +396,330 @@ public final class ModulaRuntime {
          * @throws IllegalArgumentException if the class is not exported
          * @throws RuntimeException if instantiation or casting fails
          */
-        @SuppressWarnings("unchecked")
         public <T> T getInstance(String className, Class<T> interfaceType) {
+            return getInstance(className, interfaceType, InstanceScope.PROTOTYPE);
+        }
+
+        /**
+         * Returns an instance of an exported class in the given scope, cast to the specified interface type.
+         *
+         * @param className the fully qualified name of the class
+         * @param interfaceType the expected interface or superclass type
+         * @param scope whether to create a new instance or reuse the module-wide singleton
+         * @param <T> the type of the interface
+         * @return an instance of the class cast to the interface type
+         * @throws IllegalArgumentException if the class is not exported
+         * @throws RuntimeException if instantiation or casting fails
+         */
+        public <T> T getInstance(String className, Class<T> interfaceType, InstanceScope scope) {
+            if (closed) {
+                throw new IllegalStateException("Module is closed: " + getName());
+            }
+            ExportedClass exported = resolved.get(className);
+            if (exported == null) {
+                exported = resolve(className);
+            }
+            try {
+                if (!interfaceType.isAssignableFrom(exported.type)) {
+                    throw new ClassCastException(className + " does not implement " + interfaceType.getName());
+                }
+                Object instance = scope == InstanceScope.SINGLETON ? exported.singleton() : exported.newInstance();
+                return interfaceType.cast(instance);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("Cannot instantiate " + className, e);
+            }
+        }
+
+        /**
+         * Returns a proxy of an exported class that runs every call of an interface method with the module's
+         * class loader as the thread context class loader, restoring the caller's afterwards. Same as
+         * {@link #getProxy(String, Class, InstanceScope)} with {@link InstanceScope#PROTOTYPE}.
+         *
+         * @param className the fully qualified name of the class
+         * @param interfaceType the public interface to proxy
+         * @param <T> the type of the interface
+         * @return the proxy
+         * @throws IllegalArgumentException if the class is not exported or {@code interfaceType} is not a public interface
+         * @throws RuntimeException if instantiation or casting fails
+         */
+        public <T> T getProxy(String className, Class<T> interfaceType) {
+            return getProxy(className, interfaceType, InstanceScope.PROTOTYPE);
+        }
+
+        /**
+         * Returns a proxy of an instance of an exported class, in the given scope, that runs every call of an
+         * interface method with the module's class loader as the thread context class loader, e.g. for code that
+         * looks up services through {@link java.util.ServiceLoader} or {@link Thread#getContextClassLoader()}. The
+         * caller's context class loader is restored when the call returns or throws.
+         *
+         * <p>The proxy class is generated once per interface and calls the instance directly, without reflection,
+         * so a call costs little more than setting the context class loader twice. Methods of {@link Object}
+         * not declared by the interface are the proxy's own. Like instances, proxies are not tracked as in-flight
+         * calls and keep the module's class loader reachable while they are.</p>
+         *
+         * @param className the fully qualified name of the class
+         * @param interfaceType the public interface to proxy
+         * @param scope whether to wrap a new instance or the module-wide singleton
+         * @param <T> the type of the interface
+         * @return the proxy
+         * @throws IllegalArgumentException if the class is not exported or {@code interfaceType} is not a public interface
+         * @throws RuntimeException if instantiation or casting fails
+         */
+        public <T> T getProxy(String className, Class<T> interfaceType, InstanceScope scope) {
+            ModulaClassLoader l = loader;
+            if (l == null) {
+                throw new IllegalStateException("Module is closed: " + getName());
+            }
+            return ContextProxy.create(interfaceType, getInstance(className, interfaceType, scope), l);
+        }
+
+        /**
+         * Same as {@link #getProxy(String, Class, InstanceScope)}, with every call of an interface method admitted
+         * by {@code bulkhead} as by {@link Bulkhead#call(java.util.function.Supplier)}: on the caller's thread,
+         * holding a permit while it runs, and failing with a {@link BulkheadFullException} without reaching the
+         * instance if it is rejected.
+         *
+         * @param className the fully qualified name of the class
+         * @param interfaceType the public interface to proxy
+         * @param scope whether to wrap a new instance or the module-wide singleton
+         * @param bulkhead the bulkhead guarding the module
+         * @param <T> the type of the interface
+         * @return the proxy
+         * @throws IllegalArgumentException if the class is not exported or {@code interfaceType} is not a public interface
+         * @throws RuntimeException if instantiation or casting fails
+         */
+        public <T> T getProxy(String className, Class<T> interfaceType, InstanceScope scope, Bulkhead bulkhead) {
+            Objects.requireNonNull(bulkhead, "bulkhead");
+            ModulaClassLoader l = loader;
+            if (l == null) {
+                throw new IllegalStateException("Module is closed: " + getName());
+            }
+            return ContextProxy.create(interfaceType, getInstance(className, interfaceType, scope), l, bulkhead);
+        }
+
+        /**
+         * Runs {@code action} on an instance of an exported class, counting the call as in flight
+         * so that {@link #close(long, TimeUnit)} waits for it.
+         *
+         * @param className the fully qualified name of the class
+         * @param interfaceType the expected interface or superclass type
+         * @param scope the instance scope
+         * @param action the call to make on the instance
+         * @param <T> the type of the interface
+         * @param <R> the result type
+         * @return the result of {@code action}
+         * @throws IllegalStateException if the module is closed
+         */
+        public <T, R> R call(String className, Class<T> interfaceType, InstanceScope scope,
+                             Function<? super T, ? extends R> action) {
+            if (!tryAcquire()) {
+                throw new IllegalStateException("Module is closed: " + getName());
+            }
+            try {
+                return action.apply(getInstance(className, interfaceType, scope));
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Registers an in-flight call, unless the module is closed.
+         * Every successful acquire must be followed by {@link #release()}.
+         *
+         * @return {@code true} if the call may proceed, {@code false} if the module is closed
+         */
+        public boolean tryAcquire() {
+            inFlight.incrementAndGet();
+            if (closed) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Ends a call registered by {@link #tryAcquire()}.
+         */
+        public void release() {
+            if (inFlight.decrementAndGet() == 0 && closed) {
+                synchronized (drainLock) {
+                    drainLock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Returns the number of calls currently in flight.
+         *
+         * @return the in-flight call count
+         */
+        public int getInFlightCalls() {
+            return inFlight.get();
+        }
+
+        /**
+         * Returns whether {@link #close(long, TimeUnit)} has been called.
+         *
+         * @return {@code true} if the module is closed
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Closes the module: new calls are rejected at once, in-flight calls are given up to
+         * {@code timeout} to finish, then the class loader and its JARs are closed and the loader is handed
+         * to the runtime's {@link LoaderLeakDetector} to verify it gets collected.
+         *
+         * @param timeout the maximum time to wait for in-flight calls
+         * @param unit the unit of {@code timeout}
+         * @return {@code true} if all in-flight calls finished in time
+         * @throws InterruptedException if interrupted while waiting; the loader is still closed
+         */
+        public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+            closed = true;
+            current.remove(getName(), this);
+            try {
+                long deadline = System.nanoTime() + unit.toNanos(timeout);
+                synchronized (drainLock) {
+                    while (inFlight.get() > 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+                    }
+                }
+                return inFlight.get() == 0;
+            } finally {
+                resolved.clear();
+                ModulaClassLoader retired = loader;
+                if (retired != null) {
+                    loader = null;
+                    leakDetector.track(getName(), retired);
+                    try {
+                        retired.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to close module: " + getName(), e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Loads and links the warm-up classes in batches on {@code executor}, then runs the hooks in order
+         * on it. Classes that cannot be loaded and hooks that throw are reported in the result and do not
+         * fail the warm-up.
+         *
+         * @param warmup the classes and hooks
+         * @param executor the pool to run on, e.g. one bounded to a few threads shared by all modules
+         * @return the result, complete once every class was tried and every hook ran; completes exceptionally
+         *         only if the class list file cannot be read
+         * @throws IllegalStateException if the module is closed
+         */
+        public CompletableFuture<ModuleWarmup.Result> warmUp(ModuleWarmup warmup, Executor executor) {
+            ModulaClassLoader l = loader;
+            if (l == null) {
+                throw new IllegalStateException("Module is closed: " + getName());
+            }
+            long start = System.nanoTime();
+            List<String> names;
+            try {
+                Set<String> set = warmup.readClassNames();
+                if (warmup.isCachedClasses()) {
+                    set.addAll(l.getRestoredClassNames());
+                }
+                names = new ArrayList<>(set);
+            } catch (IOException e) {
+                CompletableFuture<ModuleWarmup.Result> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new UncheckedIOException(
+                        "Cannot read warm-up class list of module " + getName() + ": " + warmup.getClassList(), e));
+                return failed;
+            }
+            AtomicInteger loaded = new AtomicInteger();
+            Queue<String> notLoaded = new ConcurrentLinkedQueue<>();
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < names.size(); from += WARMUP_BATCH) {
+                List<String> batch = names.subList(from, Math.min(names.size(), from + WARMUP_BATCH));
+                batches.add(CompletableFuture.runAsync(() -> {
+                    for (String name : batch) {
+                        try {
+                            // Loads without initializing; reflection links it, i.e. verifies it now, not on first use.
+                            Class.forName(name, false, l).getDeclaredFields();
+                            loaded.incrementAndGet();
+                        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+                            notLoaded.add(name);
+                        }
+                    }
+                }, executor));
+            }
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApplyAsync(v -> {
+                Map<String, Throwable> hookFailures = new LinkedHashMap<>();
+                for (String hook : warmup.getHooks()) {
+                    try {
+                        getInstance(hook, Runnable.class, InstanceScope.SINGLETON).run();
+                    } catch (RuntimeException | LinkageError e) {
+                        hookFailures.put(hook, e);
+                    }
+                }
+                return new ModuleWarmup.Result(loaded.get(), new ArrayList<>(notLoaded), hookFailures,
+                        System.nanoTime() - start);
+            }, executor);
+        }
+
+        private ExportedClass resolve(String className) {
             if (!exportedClasses.contains(className)) {
                 throw new IllegalArgumentException("Class not exported: " + className);
             }
             try {
-                Class<?> clazz = loader.loadClass(className);
-                //System.out.println("[DEBUG]>>> Loaded class: " + clazz.getName() + " by loader: " + clazz.getClassLoader());
-                Object instance = clazz.getDeclaredConstructor().newInstance();
-                if (!interfaceType.isInstance(instance)) {
-                    throw new ClassCastException(className + " does not implement " + interfaceType.getName());
+                ModulaClassLoader l = loader;
+                if (l == null) {
+                    throw new IllegalStateException("Module is closed: " + getName());
                 }
-                return (T) instance;
+                Class<?> clazz = l.loadClass(className);
+                MethodHandle constructor = MethodHandles.publicLookup()
+                        .findConstructor(clazz, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                ExportedClass exported = new ExportedClass(clazz, constructor);
+                ExportedClass existing = resolved.putIfAbsent(className, exported);
+                return existing != null ? existing : exported;
             } catch (Exception e) {
                 throw new RuntimeException("Cannot instantiate " + className, e);
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A loaded exported class with its cached constructor and, for {@link InstanceScope#SINGLETON}, its instance.
+     */
+    private static final class ExportedClass {
+        final Class<?> type;
+        private final MethodHandle constructor;
+        private volatile Object singleton;
+
+        ExportedClass(Class<?> type, MethodHandle constructor) {
+            this.type = type;
+            this.constructor = constructor;
+        }
+
+        Object newInstance() throws Throwable {
+            return (Object) constructor.invokeExact();
+        }
+
+        Object singleton() throws Throwable {
+            Object instance = singleton;
+            if (instance == null) {
+                synchronized (this) {
+                    instance = singleton;
+                    if (instance == null) {
+                        instance = newInstance();
+                        singleton = instance;
+                    }
+                }
+            }
+            return instance;
+        }
+    }
+}
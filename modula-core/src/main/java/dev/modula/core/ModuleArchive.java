@@ -0,0 +1,149 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import dev.modula.util.ClassLoaderUtil;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single "fat module" archive holding the adapter JAR and its dependency JARs as nested entries.
+ *
+ * <p>The default layout mirrors the deployment directory of a module:</p>
+ * <pre>
+ * samplemodule-one.zip
+ * ├── samplemodule-one-impl-adapter.jar   (the only JAR at the root: adapter)
+ * └── lib/
+ *     ├── logback-classic-1.4.14.jar      (dependency JARs, in archive order)
+ *     └── logback-core-1.4.14.jar
+ * </pre>
+ *
+ * <p>The archive is memory-mapped and each nested JAR is read in place: a nested JAR stored without
+ * compression is a slice of the outer mapping, so nothing is extracted to disk. A compressed nested
+ * JAR is inflated once into memory. Store nested JARs uncompressed (e.g. {@code zip -0}) for best
+ * results.</p>
+ *
+ * <p>A module bundle (see {@link ModuleBundle}) is a module archive with an index: its JARs default to those
+ * of the index, in index order, and the entries of each JAR are taken from the index instead of its central
+ * directory.</p>
+ */
+final class ModuleArchive {
+
+    private static final String LIB_PREFIX = "lib/";
+    private static final String JAR_SUFFIX = ".jar";
+
+    private final List<ClassSource> sources;
+    private final ModuleBundle bundle;
+
+    private ModuleArchive(List<ClassSource> sources, ModuleBundle bundle) {
+        this.sources = sources;
+        this.bundle = bundle;
+    }
+
+    /**
+     * Returns the nested JARs in module path order.
+     *
+     * @return the adapter source followed by the dependency sources
+     */
+    List<ClassSource> getSources() {
+        return sources;
+    }
+
+    /**
+     * Returns the index of the archive.
+     *
+     * @return the index, or {@code null} if the archive is not a module bundle
+     */
+    ModuleBundle getBundle() {
+        return bundle;
+    }
+
+    /**
+     * Opens the nested JARs of a module archive in module path order.
+     *
+     * @param archive the archive path
+     * @param adapterJar the adapter JAR entry, or {@code null} to use the first JAR of the index or else the
+     *        only JAR at the archive root
+     * @param dependencyJars the dependency JAR entries, or empty to use the other JARs of the index or else
+     *        every JAR under {@code lib/}
+     * @return the opened archive
+     * @throws IOException if the archive, its index or a nested JAR cannot be read
+     */
+    static ModuleArchive open(Path archive, Path adapterJar, List<Path> dependencyJars) throws IOException {
+        MappedJarClassSource outer = new MappedJarClassSource(archive);
+        Map<String, ClassSource.Entry> byName = new HashMap<>();
+        List<String> rootJars = new ArrayList<>();
+        List<String> libJars = new ArrayList<>();
+        ModuleBundle bundle = null;
+        for (ClassSource.Entry entry : outer.entries()) {
+            String name = entry.getName();
+            byName.put(name, entry);
+            if (name.equals(ModuleBundle.INDEX_ENTRY)) {
+                bundle = ModuleBundle.read(entry.read(), archive);
+            } else if (name.endsWith(JAR_SUFFIX)) {
+                if (name.indexOf('/') < 0) {
+                    rootJars.add(name);
+                } else if (name.startsWith(LIB_PREFIX) && name.indexOf('/', LIB_PREFIX.length()) < 0) {
+                    libJars.add(name);
+                }
+            }
+        }
+
+        Map<String, ModuleBundle.Jar> indexed = new HashMap<>();
+        if (bundle != null) {
+            // The index lists the adapter first, then the dependencies in module path order.
+            rootJars.clear();
+            libJars.clear();
+            for (ModuleBundle.Jar jar : bundle.getJars()) {
+                indexed.put(jar.name, jar);
+                if (indexed.size() == 1) {
+                    rootJars.add(jar.name);
+                } else {
+                    libJars.add(jar.name);
+                }
+            }
+        }
+
+        String adapterName;
+        if (adapterJar != null) {
+            adapterName = ClassLoaderUtil.toEntryName(adapterJar);
+        } else if (rootJars.size() == 1) {
+            adapterName = rootJars.get(0);
+        } else {
+            throw new IOException("Cannot tell the adapter JAR in " + archive + " from root JARs " + rootJars
+                    + "; set it explicitly");
+        }
+        List<String> dependencyNames = new ArrayList<>();
+        if (dependencyJars.isEmpty()) {
+            dependencyNames.addAll(libJars);
+        } else {
+            for (Path dep : dependencyJars) {
+                dependencyNames.add(ClassLoaderUtil.toEntryName(dep));
+            }
+        }
+
+        List<ClassSource> sources = new ArrayList<>(1 + dependencyNames.size());
+        sources.add(nested(outer, byName, adapterName, indexed.get(adapterName)));
+        for (String name : dependencyNames) {
+            sources.add(nested(outer, byName, name, indexed.get(name)));
+        }
+        return new ModuleArchive(sources, bundle);
+    }
+
+    private static ClassSource nested(ClassSource outer, Map<String, ClassSource.Entry> byName, String name,
+                                      ModuleBundle.Jar indexed) throws IOException {
+        ClassSource.Entry entry = byName.get(name);
+        if (entry == null) {
+            throw new IOException("No entry " + name + " in module archive " + outer.getLocation());
+        }
+        URL location = new URL("jar:" + outer.getLocation() + "!/" + name);
+        return indexed != null ? new MappedJarClassSource(entry.read(), location, indexed)
+                : new MappedJarClassSource(entry.read(), location);
+    }
+}
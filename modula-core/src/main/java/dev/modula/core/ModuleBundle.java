@@ -0,0 +1,299 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * The index of a module bundle: a module archive (see {@link ModuleSpec.Builder#moduleArchive(Path)}) written by
+ * {@link ModuleBundleWriter}, e.g. by the {@code modula-maven-plugin}, with what the runtime would otherwise work
+ * out from the JARs on every start computed once at build time.
+ *
+ * <p>The index is the archive entry {@value #INDEX_ENTRY}. It lists the nested JARs in module path order with the
+ * SHA-256 of each and the position of every entry inside it, the packages the module exports and the classes
+ * shadowed by an earlier JAR. Opening a bundle reads the index instead of telling the adapter JAR from the others
+ * and parsing the central directory of every nested JAR, and the class data cache is keyed by the JARs' hashes
+ * instead of a CRC-32 of the whole archive. {@value #CONFLICTS_ENTRY} lists the shadowed classes as text.</p>
+ */
+public final class ModuleBundle {
+
+    /**
+     * The archive entry holding the index.
+     */
+    public static final String INDEX_ENTRY = "META-INF/modula/bundle.idx";
+
+    /**
+     * The archive entry holding the shadowed classes as text, one per line.
+     */
+    public static final String CONFLICTS_ENTRY = "META-INF/modula/conflicts.txt";
+
+    static final int MAGIC = 0x4D424E44; // "MBND"
+    static final int VERSION = 1;
+
+    private final String moduleName;
+    private final Set<String> exportedPackages;
+    private final List<Jar> jars;
+    private final List<Conflict> conflicts;
+
+    ModuleBundle(String moduleName, Set<String> exportedPackages, List<Jar> jars, List<Conflict> conflicts) {
+        this.moduleName = moduleName;
+        this.exportedPackages = Collections.unmodifiableSet(exportedPackages);
+        this.jars = Collections.unmodifiableList(jars);
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * Reads the index of a module bundle.
+     *
+     * @param archive the archive path
+     * @return the index, or {@code null} if the archive is a plain module archive without one
+     * @throws IOException if the archive or its index cannot be read
+     */
+    public static ModuleBundle read(Path archive) throws IOException {
+        MappedJarClassSource outer = new MappedJarClassSource(archive);
+        for (ClassSource.Entry entry : outer.entries()) {
+            if (entry.getName().equals(INDEX_ENTRY)) {
+                return read(entry.read(), archive);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses an index, see {@link ModuleBundleWriter} for the layout.
+     *
+     * @param index the content of the index entry
+     * @param archive the archive, for messages
+     * @throws ZipException if the index is not one this version can read
+     */
+    static ModuleBundle read(ByteBuffer index, Path archive) throws ZipException {
+        try {
+            if (index.getInt() != MAGIC || index.getInt() != VERSION) {
+                throw new ZipException("Unsupported module bundle index in " + archive);
+            }
+            String moduleName = string(index);
+            int exportCount = index.getInt();
+            Set<String> exportedPackages = new LinkedHashSet<>();
+            for (int i = 0; i < exportCount; i++) {
+                exportedPackages.add(string(index));
+            }
+            int jarCount = index.getInt();
+            List<Jar> jars = new ArrayList<>(jarCount);
+            for (int i = 0; i < jarCount; i++) {
+                String name = string(index);
+                int size = index.getInt();
+                byte[] sha256 = new byte[32];
+                index.get(sha256);
+                int entryCount = index.getInt();
+                Jar jar = new Jar(name, size, sha256, entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    jar.entryNames[j] = string(index);
+                    jar.methods[j] = index.getShort() & 0xFFFF;
+                    jar.localHeaders[j] = index.getInt();
+                    jar.compressedSizes[j] = index.getInt();
+                    jar.sizes[j] = index.getInt();
+                }
+                jars.add(jar);
+            }
+            int conflictCount = index.getInt();
+            List<Conflict> conflicts = new ArrayList<>(conflictCount);
+            for (int i = 0; i < conflictCount; i++) {
+                String className = string(index);
+                String jar = jars.get(index.getShort() & 0xFFFF).name;
+                String shadowedJar = jars.get(index.getShort() & 0xFFFF).name;
+                conflicts.add(new Conflict(className, jar, shadowedJar, index.get() != 0));
+            }
+            return new ModuleBundle(moduleName, exportedPackages, jars, conflicts);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ZipException("Truncated module bundle index in " + archive);
+        }
+    }
+
+    private static String string(ByteBuffer index) {
+        byte[] bytes = new byte[index.getShort() & 0xFFFF];
+        index.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the name of the module the bundle was built for.
+     *
+     * @return the module name
+     */
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    /**
+     * Returns the packages the module was built to export to other modules, each covering its sub-packages, for
+     * {@link ModuleSpec.Builder#exportedPackages(String...)}.
+     *
+     * @return the exported packages, possibly empty
+     */
+    public Set<String> getExportedPackages() {
+        return exportedPackages;
+    }
+
+    /**
+     * Returns the nested JARs in module path order, adapter first, with the SHA-256 of each.
+     *
+     * @return the hex SHA-256 by archive entry name
+     */
+    public Map<String, String> getJarDigests() {
+        Map<String, String> digests = new LinkedHashMap<>();
+        for (Jar jar : jars) {
+            digests.put(jar.name, hex(jar.sha256));
+        }
+        return digests;
+    }
+
+    /**
+     * Returns the SHA-256 of the bundle's content: of the digests of its JARs, in order.
+     *
+     * @return the hex digest
+     */
+    public String getDigest() {
+        return hex(digest());
+    }
+
+    /**
+     * Returns the classes found in more than one JAR, in module path order.
+     *
+     * @return the shadowed classes, empty if there are none
+     */
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    List<Jar> getJars() {
+        return jars;
+    }
+
+    /**
+     * Returns the first 8 bytes of the content digest, standing in for a checksum of the archive.
+     */
+    long checksum() {
+        return ByteBuffer.wrap(digest()).getLong();
+    }
+
+    private byte[] digest() {
+        MessageDigest md = sha256();
+        for (Jar jar : jars) {
+            md.update(jar.sha256);
+        }
+        return md.digest();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A nested JAR of a bundle and the position of every file entry inside it, as in its central directory.
+     */
+    static final class Jar {
+        final String name;
+        final int size;
+        final byte[] sha256;
+        final String[] entryNames;
+        final int[] methods;
+        final int[] localHeaders;
+        final int[] compressedSizes;
+        final int[] sizes;
+
+        Jar(String name, int size, byte[] sha256, int entryCount) {
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.entryNames = new String[entryCount];
+            this.methods = new int[entryCount];
+            this.localHeaders = new int[entryCount];
+            this.compressedSizes = new int[entryCount];
+            this.sizes = new int[entryCount];
+        }
+    }
+
+    /**
+     * A class found in more than one JAR of a bundle: the first JAR defines it, the later one is never read.
+     */
+    public static final class Conflict {
+        private final String className;
+        private final String jar;
+        private final String shadowedJar;
+        private final boolean identical;
+
+        Conflict(String className, String jar, String shadowedJar, boolean identical) {
+            this.className = className;
+            this.jar = jar;
+            this.shadowedJar = shadowedJar;
+            this.identical = identical;
+        }
+
+        /**
+         * Returns the name of the shadowed class.
+         *
+         * @return the fully qualified class name
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Returns the JAR the class is loaded from.
+         *
+         * @return the archive entry name
+         */
+        public String getJar() {
+            return jar;
+        }
+
+        /**
+         * Returns the JAR whose copy of the class is never read.
+         *
+         * @return the archive entry name
+         */
+        public String getShadowedJar() {
+            return shadowedJar;
+        }
+
+        /**
+         * Tells whether both copies have the same bytes, i.e. the conflict is harmless.
+         *
+         * @return {@code true} if the copies are identical
+         */
+        public boolean isIdentical() {
+            return identical;
+        }
+
+        @Override
+        public String toString() {
+            return className + " in " + jar + " shadows " + shadowedJar + (identical ? " (identical)" : " (differs)");
+        }
+    }
+}
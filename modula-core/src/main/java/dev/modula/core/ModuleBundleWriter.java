@@ -0,0 +1,307 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs an adapter JAR and its dependency JARs into a module bundle, see {@link ModuleBundle}.
+ *
+ * <p>The bundle has the layout of a module archive, with every nested JAR stored uncompressed so that it is read
+ * in place, and the index first:</p>
+ * <pre>
+ * samplemodule-one-modula.zip
+ * ├── META-INF/modula/bundle.idx
+ * ├── META-INF/modula/conflicts.txt
+ * ├── samplemodule-one-impl-adapter.jar
+ * └── lib/
+ *     ├── logback-classic-1.4.14.jar
+ *     └── logback-core-1.4.14.jar
+ * </pre>
+ *
+ * <p>The index is big-endian; strings are an unsigned short length followed by UTF-8 bytes:</p>
+ * <pre>
+ * int magic "MBND", int version
+ * string module name
+ * int count, string exported package...
+ * int count, per JAR: string entry name, int size, byte[32] SHA-256,
+ *            int count, per file entry: string name, short method, int local header offset,
+ *                                       int compressed size, int size
+ * int count, per shadowed class: string class name, short JAR index, short shadowed JAR index, byte identical
+ * </pre>
+ *
+ * <p>Writing also validates the module: every JAR must be readable by the mapped engine (no ZIP64), two JARs
+ * must not have the same file name, and every exported package must contain a class.</p>
+ */
+public final class ModuleBundleWriter {
+
+    private static final String LIB_PREFIX = "lib/";
+
+    private final String moduleName;
+    private final Path adapterJar;
+    private final List<Path> dependencyJars;
+    private final Set<String> exportedPackages;
+
+    private ModuleBundleWriter(Builder builder) {
+        this.moduleName = builder.moduleName;
+        this.adapterJar = builder.adapterJar;
+        this.dependencyJars = new ArrayList<>(builder.dependencyJars);
+        this.exportedPackages = new LinkedHashSet<>(builder.exportedPackages);
+    }
+
+    /**
+     * Creates a new {@link Builder}.
+     *
+     * @param moduleName the name of the module
+     * @return a new builder
+     */
+    public static Builder builder(String moduleName) {
+        return new Builder(moduleName);
+    }
+
+    /**
+     * Writes the bundle, replacing the file atomically where the file system allows.
+     *
+     * @param bundle the file to write
+     * @return the index written into the bundle
+     * @throws IOException if a JAR cannot be read or the bundle cannot be written
+     * @throws IllegalArgumentException if two JARs have the same file name or an exported package has no class
+     */
+    public ModuleBundle write(Path bundle) throws IOException {
+        List<Path> files = new ArrayList<>(1 + dependencyJars.size());
+        files.add(adapterJar);
+        files.addAll(dependencyJars);
+
+        List<byte[]> contents = new ArrayList<>(files.size());
+        List<ModuleBundle.Jar> jars = new ArrayList<>(files.size());
+        Map<String, ClassSource.Entry> classes = new HashMap<>();
+        Map<ClassSource, String> sourceNames = new HashMap<>();
+        List<ModuleBundle.Conflict> conflicts = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = (i == 0 ? "" : LIB_PREFIX) + file.getFileName();
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Module '" + moduleName + "' has two JARs named " + name);
+            }
+            byte[] content = Files.readAllBytes(file);
+            MappedJarClassSource source;
+            try {
+                source = new MappedJarClassSource(ByteBuffer.wrap(content), file.toUri().toURL());
+            } catch (ZipException e) {
+                throw new ZipException("Cannot bundle " + file + ": " + e.getMessage());
+            }
+            sourceNames.put(source, name);
+            ModuleBundle.Jar jar = new ModuleBundle.Jar(name, content.length,
+                    ModuleBundle.sha256().digest(content), source.entries().size());
+            for (int j = 0; j < source.entries().size(); j++) {
+                MappedJarClassSource.MappedEntry entry = (MappedJarClassSource.MappedEntry) source.entries().get(j);
+                jar.entryNames[j] = entry.getName();
+                jar.methods[j] = entry.method;
+                jar.localHeaders[j] = entry.localHeader;
+                jar.compressedSizes[j] = entry.compressedSize;
+                jar.sizes[j] = entry.size;
+                String className = ClassIndex.toClassName(entry.getName());
+                if (className != null) {
+                    ClassSource.Entry first = classes.putIfAbsent(className, entry);
+                    if (first != null) {
+                        conflicts.add(new ModuleBundle.Conflict(className, sourceNames.get(first.getSource()), name,
+                                first.read().equals(entry.read())));
+                    }
+                }
+            }
+            contents.add(content);
+            jars.add(jar);
+        }
+        for (String pkg : exportedPackages) {
+            if (!hasClassIn(classes.keySet(), pkg)) {
+                throw new IllegalArgumentException("Module '" + moduleName + "' exports package " + pkg
+                        + ", which has no classes");
+            }
+        }
+
+        ModuleBundle index = new ModuleBundle(moduleName, exportedPackages, jars, conflicts);
+        Path dir = bundle.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(bundle.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(os, 64 * 1024))) {
+                putStored(out, ModuleBundle.INDEX_ENTRY, indexBytes(index));
+                putStored(out, ModuleBundle.CONFLICTS_ENTRY, conflictReport(conflicts));
+                for (int i = 0; i < jars.size(); i++) {
+                    putStored(out, jars.get(i).name, contents.get(i));
+                }
+            }
+            try {
+                Files.move(tmp, bundle, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, bundle, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return index;
+    }
+
+    private static boolean hasClassIn(Set<String> classNames, String pkg) {
+        String prefix = pkg + ".";
+        for (String className : classNames) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] indexBytes(ModuleBundle index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ModuleBundle.MAGIC);
+            out.writeInt(ModuleBundle.VERSION);
+            writeString(out, index.getModuleName());
+            out.writeInt(index.getExportedPackages().size());
+            for (String pkg : index.getExportedPackages()) {
+                writeString(out, pkg);
+            }
+            Map<String, Integer> jarIndexes = new HashMap<>();
+            out.writeInt(index.getJars().size());
+            for (ModuleBundle.Jar jar : index.getJars()) {
+                jarIndexes.put(jar.name, jarIndexes.size());
+                writeString(out, jar.name);
+                out.writeInt(jar.size);
+                out.write(jar.sha256);
+                out.writeInt(jar.entryNames.length);
+                for (int i = 0; i < jar.entryNames.length; i++) {
+                    writeString(out, jar.entryNames[i]);
+                    out.writeShort(jar.methods[i]);
+                    out.writeInt(jar.localHeaders[i]);
+                    out.writeInt(jar.compressedSizes[i]);
+                    out.writeInt(jar.sizes[i]);
+                }
+            }
+            out.writeInt(index.getConflicts().size());
+            for (ModuleBundle.Conflict conflict : index.getConflicts()) {
+                writeString(out, conflict.getClassName());
+                out.writeShort(jarIndexes.get(conflict.getJar()));
+                out.writeShort(jarIndexes.get(conflict.getShadowedJar()));
+                out.writeByte(conflict.isIdentical() ? 1 : 0);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] conflictReport(List<ModuleBundle.Conflict> conflicts) {
+        StringBuilder report = new StringBuilder();
+        for (ModuleBundle.Conflict conflict : conflicts) {
+            report.append(conflict).append('\n');
+        }
+        return report.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds an uncompressed entry, which the mapped engine reads as a slice of the archive.
+     */
+    private static void putStored(ZipOutputStream out, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /**
+     * A builder of {@link ModuleBundleWriter}s.
+     */
+    public static final class Builder {
+        private final String moduleName;
+        private Path adapterJar;
+        private final List<Path> dependencyJars = new ArrayList<>();
+        private final Set<String> exportedPackages = new LinkedHashSet<>();
+
+        private Builder(String moduleName) {
+            this.moduleName = Objects.requireNonNull(moduleName, "moduleName");
+        }
+
+        /**
+         * Sets the adapter JAR, first on the module path and stored at the bundle root.
+         *
+         * @param adapterJar the adapter JAR
+         * @return this builder instance
+         */
+        public Builder adapterJar(Path adapterJar) {
+            this.adapterJar = adapterJar;
+            return this;
+        }
+
+        /**
+         * Adds a dependency JAR, stored under {@code lib/} in the order added.
+         *
+         * @param dependencyJar the dependency JAR
+         * @return this builder instance
+         */
+        public Builder dependencyJar(Path dependencyJar) {
+            this.dependencyJars.add(Objects.requireNonNull(dependencyJar, "dependencyJar"));
+            return this;
+        }
+
+        /**
+         * Adds packages the module exports to other modules, each covering its sub-packages.
+         *
+         * @param packages the package names
+         * @return this builder instance
+         */
+        public Builder exportedPackages(String... packages) {
+            for (String pkg : packages) {
+                exportedPackages.add(pkg.endsWith(".") ? pkg.substring(0, pkg.length() - 1) : pkg);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the writer.
+         *
+         * @return the writer
+         * @throws IllegalStateException if no adapter JAR is set
+         */
+        public ModuleBundleWriter build() {
+            if (adapterJar == null) {
+                throw new IllegalStateException("Adapter JAR must be set for module '" + moduleName + "'");
+            }
+            return new ModuleBundleWriter(this);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The import graph of a set of modules, see {@link ModuleSpec.Builder#importPackages(String, String...)}.
+ *
+ * <p>Resolving it checks every import before any module is loaded: the exporting module must be one of the set
+ * or already loaded, it must export the imported packages, and the imports must not form a cycle. The modules
+ * come out in topological order, each after the modules of the set it imports from.</p>
+ */
+final class ModuleGraph {
+
+    private ModuleGraph() {
+    }
+
+    /**
+     * Checks the imports of a set of modules and orders them.
+     *
+     * @param specs the modules to load
+     * @param loaded the spec of a module already loaded by name, or {@code null} if none is
+     * @return the specs, each after those it imports from, otherwise in the given order
+     * @throws IllegalArgumentException if two specs have the same name
+     * @throws IllegalStateException if a module imports from an unknown module or a package that module does
+     *         not export, or if the imports form a cycle
+     */
+    static List<ModuleSpec> resolve(Collection<ModuleSpec> specs, Function<String, ModuleSpec> loaded) {
+        Map<String, ModuleSpec> byName = new LinkedHashMap<>();
+        for (ModuleSpec spec : specs) {
+            if (byName.put(spec.getName(), spec) != null) {
+                throw new IllegalArgumentException("Duplicate module name: " + spec.getName());
+            }
+        }
+        for (ModuleSpec spec : byName.values()) {
+            for (Map.Entry<String, Set<String>> imported : spec.getImports().entrySet()) {
+                ModuleSpec exporter = byName.get(imported.getKey());
+                if (exporter == null) {
+                    exporter = loaded.apply(imported.getKey());
+                }
+                if (exporter == null) {
+                    throw new IllegalStateException("Module '" + spec.getName() + "' imports from module '"
+                            + imported.getKey() + "', which is neither loaded nor being loaded");
+                }
+                checkExports(spec, exporter, imported.getValue());
+            }
+        }
+        List<ModuleSpec> order = new ArrayList<>(byName.size());
+        Map<String, Boolean> visited = new HashMap<>();
+        for (ModuleSpec spec : byName.values()) {
+            visit(spec, byName, visited, new ArrayList<String>(), order);
+        }
+        return order;
+    }
+
+    /**
+     * Checks that a module exports the packages another imports from it.
+     *
+     * @throws IllegalStateException if it does not
+     */
+    static void checkExports(ModuleSpec importer, ModuleSpec exporter, Set<String> packages) {
+        if (exporter.getExportedPackages().isEmpty()) {
+            throw new IllegalStateException("Module '" + importer.getName() + "' imports from module '"
+                    + exporter.getName() + "', which exports no packages");
+        }
+        for (String pkg : packages) {
+            if (!exports(exporter, pkg)) {
+                throw new IllegalStateException("Module '" + importer.getName() + "' imports package " + pkg
+                        + ", which module '" + exporter.getName() + "' does not export; it exports "
+                        + exporter.getExportedPackages());
+            }
+        }
+    }
+
+    /**
+     * Returns the packages a module imports from another: those it names, or every exported one if it names none.
+     */
+    static Set<String> importedPackages(Set<String> packages, ModuleSpec exporter) {
+        return packages.isEmpty() ? exporter.getExportedPackages() : packages;
+    }
+
+    private static boolean exports(ModuleSpec exporter, String pkg) {
+        for (String exported : exporter.getExportedPackages()) {
+            if (pkg.equals(exported) || pkg.startsWith(exported + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a module to {@code order} after the modules of the set it imports from.
+     *
+     * @param visited {@code false} for a module on the current path, {@code true} once it is ordered
+     * @param path the names of the modules on the current path, to report a cycle
+     */
+    private static void visit(ModuleSpec spec, Map<String, ModuleSpec> byName, Map<String, Boolean> visited,
+                              List<String> path, List<ModuleSpec> order) {
+        Boolean done = visited.get(spec.getName());
+        if (Boolean.TRUE.equals(done)) {
+            return;
+        }
+        path.add(spec.getName());
+        if (done != null) {
+            List<String> cycle = path.subList(path.indexOf(spec.getName()), path.size());
+            throw new IllegalStateException("Cyclic module imports: " + String.join(" -> ", cycle));
+        }
+        visited.put(spec.getName(), Boolean.FALSE);
+        for (String imported : spec.getImports().keySet()) {
+            ModuleSpec exporter = byName.get(imported);
+            // Modules already loaded import nothing from the set.
+            if (exporter != null) {
+                visit(exporter, byName, visited, path, order);
+            }
+        }
+        visited.put(spec.getName(), Boolean.TRUE);
+        path.remove(path.size() - 1);
+        order.add(spec);
+    }
+}
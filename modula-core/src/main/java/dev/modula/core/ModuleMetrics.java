@@ -0,0 +1,115 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class loading counters and timers of one {@link ModulaClassLoader}.
+ *
+ * <p>Counters are {@link LongAdder}s, so concurrent class loading threads do not contend on them.
+ * Recording can be switched off per module with {@link ModuleSpec.Builder#metricsEnabled(boolean)};
+ * the loader then skips the clock reads as well, and every value stays 0.</p>
+ */
+public final class ModuleMetrics implements ModuleMetricsMXBean {
+
+    /**
+     * JMX domain of the module MBeans, see {@link #objectName(String)}.
+     */
+    public static final String JMX_DOMAIN = "dev.modula";
+
+    private final boolean enabled;
+    private final LongAdder classesDefined = new LongAdder();
+    private final LongAdder classesRestored = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder defineNanos = new LongAdder();
+    private final LongAdder classNotFound = new LongAdder();
+    private final LongAdder sharedDelegations = new LongAdder();
+
+    ModuleMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns whether this module records metrics.
+     *
+     * @return {@code true} if recording is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public long getClassesDefined() {
+        return classesDefined.sum();
+    }
+
+    @Override
+    public long getClassesRestored() {
+        return classesRestored.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getReadTimeNanos() {
+        return readNanos.sum();
+    }
+
+    @Override
+    public long getDefineTimeNanos() {
+        return defineNanos.sum();
+    }
+
+    @Override
+    public long getClassNotFoundCount() {
+        return classNotFound.sum();
+    }
+
+    @Override
+    public long getSharedDelegations() {
+        return sharedDelegations.sum();
+    }
+
+    void classRead(long bytes, long nanos) {
+        bytesRead.add(bytes);
+        readNanos.add(nanos);
+    }
+
+    void classDefined(long nanos, boolean restored) {
+        classesDefined.increment();
+        defineNanos.add(nanos);
+        if (restored) {
+            classesRestored.increment();
+        }
+    }
+
+    void classNotFound() {
+        classNotFound.increment();
+    }
+
+    void sharedDelegation() {
+        sharedDelegations.increment();
+    }
+
+    /**
+     * Returns the JMX name of a module's metrics: {@code dev.modula:type=Module,name=<module>}.
+     *
+     * @param moduleName the module name
+     * @return the object name
+     */
+    public static ObjectName objectName(String moduleName) {
+        try {
+            return new ObjectName(JMX_DOMAIN + ":type=Module,name=" + ObjectName.quote(moduleName));
+        } catch (MalformedObjectNameException e) {
+            // cannot happen: the name is quoted
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
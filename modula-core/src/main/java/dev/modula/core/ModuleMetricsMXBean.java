@@ -0,0 +1,46 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+/**
+ * The class loading statistics of one module, as exposed over JMX. All values are cumulative since the
+ * module's current class loader was created.
+ */
+public interface ModuleMetricsMXBean {
+
+    /**
+     * @return the number of classes defined from the module's JARs or its class data cache
+     */
+    long getClassesDefined();
+
+    /**
+     * @return the number of those classes that came from the class data cache
+     */
+    long getClassesRestored();
+
+    /**
+     * @return the number of class file bytes read from the module's JARs
+     */
+    long getBytesRead();
+
+    /**
+     * @return the time spent reading (and inflating) class files, in nanoseconds
+     */
+    long getReadTimeNanos();
+
+    /**
+     * @return the time spent in {@code defineClass}, i.e. parsing and verifying, in nanoseconds
+     */
+    long getDefineTimeNanos();
+
+    /**
+     * @return the number of lookups that ended in a {@link ClassNotFoundException} from the module
+     */
+    long getClassNotFoundCount();
+
+    /**
+     * @return the number of lookups delegated to another loader: the parent for a shared package, the platform
+     *         loader for a JDK class, or the exporting module's loader for an imported package
+     */
+    long getSharedDelegations();
+}
@@ -0,0 +1,122 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds and serves the URLs of a module's resources.
+ *
+ * <p>A resource URL names the module, the position of the source on the module path and the entry,
+ * e.g. {@code modula://samplemodule-one/2/logback.xml}. It is a plain string until it is opened:
+ * creating one neither touches the JAR nor, unlike a {@code jar:} URL, goes through the JDK's JAR URL
+ * cache. Opening it resolves the entry in the module's {@link ResourceIndex} and streams it with
+ * {@link ClassSource.Entry#openStream()}. The handler is attached to every URL it creates, so no
+ * global {@code URLStreamHandlerFactory} is registered; relative URLs built from one, e.g. by Spring's
+ * {@code UrlResource.createRelative}, keep it.</p>
+ */
+final class ModuleResourceUrls extends URLStreamHandler {
+
+    static final String PROTOCOL = "modula";
+
+    private final String moduleName;
+    private final List<ClassSource> sources;
+    private final Map<ClassSource, Integer> sourceIndexes = new IdentityHashMap<>();
+    private final ResourceIndex resourceIndex;
+    private volatile boolean closed;
+
+    ModuleResourceUrls(String moduleName, List<ClassSource> sources, ResourceIndex resourceIndex) {
+        this.moduleName = moduleName;
+        this.sources = sources;
+        this.resourceIndex = resourceIndex;
+        for (int i = 0; i < sources.size(); i++) {
+            sourceIndexes.put(sources.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the URL of an indexed entry.
+     *
+     * @param entry an entry of one of the module's sources
+     * @return the resource URL
+     */
+    URL toUrl(ClassSource.Entry entry) {
+        try {
+            return new URL(PROTOCOL, moduleName, -1, "/" + sourceIndexes.get(entry.getSource()) + "/" + entry.getName(), this);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Cannot create resource URL for " + entry.getName(), e);
+        }
+    }
+
+    /**
+     * Marks the module as closed; URLs handed out before can no longer be opened.
+     */
+    void close() {
+        closed = true;
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        return new EntryConnection(url);
+    }
+
+    /**
+     * Resolves the entry a URL refers to.
+     */
+    private ClassSource.Entry resolve(URL url) throws IOException {
+        if (closed) {
+            throw new IOException("Module " + moduleName + " is closed: " + url);
+        }
+        String file = url.getPath();
+        int slash = file.indexOf('/', 1);
+        if (!moduleName.equals(url.getHost()) || !file.startsWith("/") || slash < 0) {
+            throw new IOException("Not a resource of module " + moduleName + ": " + url);
+        }
+        ClassSource source;
+        try {
+            source = sources.get(Integer.parseInt(file.substring(1, slash)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("Not a resource of module " + moduleName + ": " + url);
+        }
+        String name = file.substring(slash + 1);
+        for (ClassSource.Entry entry : resourceIndex.all(name)) {
+            if (entry.getSource() == source) {
+                return entry;
+            }
+        }
+        throw new IOException("No resource " + name + " in " + source.getLocation());
+    }
+
+    private final class EntryConnection extends URLConnection {
+
+        private ClassSource.Entry entry;
+
+        EntryConnection(URL url) {
+            super(url);
+            // Entries never change while the module is open, there is nothing to revalidate.
+            setUseCaches(false);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (entry == null) {
+                entry = resolve(url);
+                connected = true;
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return entry.openStream();
+        }
+    }
+}
@@ -11,8 +11,15 @@ import java.util.*;
  * A module includes: <br>
  * 1. an adapter JAR (containing the module's implementation and the entrance of module)<br>
  * 2. a list of dependency JARs<br>
- * 3. shared packages<br>
- * 4. exported classes.
+ * 3. libraries: groups of JARs that may be shared with other modules (see {@link Builder#library(Path...)})<br>
+ * 4. shared packages<br>
+ * 5. exported classes<br>
+ * 6. exported packages, and packages imported from other modules (see {@link Builder#importPackages(String, String...)}).
+ * </p>
+ * <p>
+ * The adapter and dependency paths may also point to exploded class directories. Alternatively all
+ * of them can be packed into one module archive (see {@link Builder#moduleArchive(Path)}), in which case
+ * the paths are entries inside that archive and are read in place without extraction.
  * </p>
  */
 public final class ModuleSpec {
@@ -26,11 +33,21 @@ public final class ModuleSpec {
      */
     private final Path adapterJar;
 
+    /**
+     * The optional archive containing the adapter and dependency JARs as nested entries.
+     */
+    private final Path moduleArchive;
+
     /**
      * An unmodifiable list of paths to dependency JAR files required by the module.
      */
     private final List<Path> dependencyJars;
 
+    /**
+     * An unmodifiable list of libraries, each an unmodifiable list of JAR paths.
+     */
+    private final List<List<Path>> libraries;
+
     /**
      * An unmodifiable set of package names that are shared with the parent class loader.<br/>
      * Shared packages allow classes in these packages to be loaded by the parent class loader
@@ -38,18 +55,71 @@ public final class ModuleSpec {
      */
     private final Set<String> sharedPackages;
 
+    /**
+     * An unmodifiable map from package names to their {@link DelegationRule}, in declaration order.
+     */
+    private final Map<String, DelegationRule> packageRules;
+
     /**
      * An unmodifiable set of fully qualified class names that are exported and can be
      * instantiated by external code via {@link ModulaRuntime.IsolatedModule#getInstance(String, Class)}.
      */
     private final Set<String> exportedClasses;
 
+    /**
+     * An unmodifiable set of packages, each covering its sub-packages, that other modules may import.
+     */
+    private final Set<String> exportedPackages;
+
+    /**
+     * An unmodifiable map from the names of the modules this module imports from to the packages it imports
+     * from each, in declaration order; an empty set imports every package the module exports.
+     */
+    private final Map<String, Set<String>> imports;
+
+    /**
+     * The engine used to open and read the module's JAR files.
+     */
+    private final IoEngine ioEngine;
+
+    /**
+     * Whether the module's class loader records {@link ModuleMetrics}.
+     */
+    private final boolean metricsEnabled;
+
+    /**
+     * An unmodifiable list of transformers applied, in order, to every class the module defines.
+     */
+    private final List<ClassTransformer> transformers;
+
+    /**
+     * The directory caching the transformers' output, or {@code null} for none.
+     */
+    private final Path transformCacheDir;
+
     private ModuleSpec(Builder builder) {
         this.name = builder.name;
         this.adapterJar = builder.adapterJar;
+        this.moduleArchive = builder.moduleArchive;
         this.dependencyJars = Collections.unmodifiableList(new ArrayList<>(builder.dependencyJars));
+        List<List<Path>> libraries = new ArrayList<>(builder.libraries.size());
+        for (List<Path> library : builder.libraries) {
+            libraries.add(Collections.unmodifiableList(new ArrayList<>(library)));
+        }
+        this.libraries = Collections.unmodifiableList(libraries);
         this.sharedPackages = Collections.unmodifiableSet(new HashSet<>(builder.sharedPackages));
+        this.packageRules = Collections.unmodifiableMap(new LinkedHashMap<>(builder.packageRules));
         this.exportedClasses = Collections.unmodifiableSet(new HashSet<>(builder.exportedClasses));
+        this.exportedPackages = Collections.unmodifiableSet(new LinkedHashSet<>(builder.exportedPackages));
+        Map<String, Set<String>> imports = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : builder.imports.entrySet()) {
+            imports.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(entry.getValue())));
+        }
+        this.imports = Collections.unmodifiableMap(imports);
+        this.ioEngine = builder.ioEngine;
+        this.metricsEnabled = builder.metricsEnabled;
+        this.transformers = Collections.unmodifiableList(new ArrayList<>(builder.transformers));
+        this.transformCacheDir = builder.transformCacheDir;
     }
 
     /**
@@ -61,11 +131,19 @@ public final class ModuleSpec {
 
     /**
      * Returns the path to the adapter JAR file.
+     * If a module archive is set, this is an entry inside the archive, or {@code null} if it is discovered.
      *
      * @return the adapter JAR path
      */
     public Path getAdapterJar() { return adapterJar; }
 
+    /**
+     * Returns the module archive holding the adapter and dependency JARs, if any.
+     *
+     * @return the module archive path, or {@code null} if the JARs are standalone files
+     */
+    public Path getModuleArchive() { return moduleArchive; }
+
     /**
      * Returns an unmodifiable list of dependency JAR paths.
      *
@@ -73,6 +151,13 @@ public final class ModuleSpec {
      */
     public List<Path> getDependencyJars() { return dependencyJars; }
 
+    /**
+     * Returns the module's libraries, each a list of JAR paths.
+     *
+     * @return the unmodifiable list of libraries
+     */
+    public List<List<Path>> getLibraries() { return libraries; }
+
     /**
      * Returns an unmodifiable set of shared package names.
      *
@@ -80,6 +165,13 @@ public final class ModuleSpec {
      */
     public Set<String> getSharedPackages() { return sharedPackages; }
 
+    /**
+     * Returns the package rules, by package name, in declaration order.
+     *
+     * @return the unmodifiable map of package rules
+     */
+    public Map<String, DelegationRule> getPackageRules() { return packageRules; }
+
     /**
      * Returns an unmodifiable set of exported class names.
      *
@@ -87,6 +179,49 @@ public final class ModuleSpec {
      */
     public Set<String> getExportedClasses() { return exportedClasses; }
 
+    /**
+     * Returns the packages other modules may import, each covering its sub-packages.
+     *
+     * @return the unmodifiable set of exported packages
+     */
+    public Set<String> getExportedPackages() { return exportedPackages; }
+
+    /**
+     * Returns the imported packages by the name of the module exporting them, in declaration order. An empty
+     * set stands for every package that module exports.
+     *
+     * @return the unmodifiable map of imports
+     */
+    public Map<String, Set<String>> getImports() { return imports; }
+
+    /**
+     * Returns the engine used to read the module's JAR files.
+     *
+     * @return the I/O engine
+     */
+    public IoEngine getIoEngine() { return ioEngine; }
+
+    /**
+     * Returns whether the module's class loader records metrics.
+     *
+     * @return {@code true} if metrics are recorded
+     */
+    public boolean isMetricsEnabled() { return metricsEnabled; }
+
+    /**
+     * Returns the transformers applied to the module's classes, in order.
+     *
+     * @return the unmodifiable list of transformers
+     */
+    public List<ClassTransformer> getTransformers() { return transformers; }
+
+    /**
+     * Returns the directory caching the transformers' output.
+     *
+     * @return the transform cache directory, or {@code null} if output is not cached
+     */
+    public Path getTransformCacheDir() { return transformCacheDir; }
+
     /**
      * Creates a new {@link Builder} instance for constructing a {@link ModuleSpec}.
      *
@@ -101,9 +236,18 @@ public final class ModuleSpec {
     public static final class Builder {
         private String name;
         private Path adapterJar;
+        private Path moduleArchive;
         private final List<Path> dependencyJars = new ArrayList<>();
+        private final List<List<Path>> libraries = new ArrayList<>();
         private final Set<String> sharedPackages = new HashSet<>();
+        private final Map<String, DelegationRule> packageRules = new LinkedHashMap<>();
         private final Set<String> exportedClasses = new HashSet<>();
+        private final Set<String> exportedPackages = new LinkedHashSet<>();
+        private final Map<String, Set<String>> imports = new LinkedHashMap<>();
+        private IoEngine ioEngine = IoEngine.JAR_FILE;
+        private boolean metricsEnabled = true;
+        private final List<ClassTransformer> transformers = new ArrayList<>();
+        private Path transformCacheDir;
 
         /**
          * Sets the name of the module.
@@ -117,7 +261,7 @@ public final class ModuleSpec {
         }
 
         /**
-         * Sets the path to the adapter JAR.
+         * Sets the path to the adapter JAR, or to an exploded class directory.
          *
          * @param adapterJar the adapter JAR path
          * @return this builder instance
@@ -128,7 +272,23 @@ public final class ModuleSpec {
         }
 
         /**
-         * Adds a dependency JAR path.
+         * Reads the module from a single archive whose nested JARs are loaded in place.
+         *
+         * <p>When set, {@link #adapterJar(Path)} and {@link #dependencyJar(Path)} name entries relative to
+         * the archive root and become optional: by default the only JAR at the root is the adapter and
+         * every JAR under {@code lib/} is a dependency, in archive order. In a {@link ModuleBundle}, they are
+         * the JARs of its index, in index order.</p>
+         *
+         * @param moduleArchive the module archive path
+         * @return this builder instance
+         */
+        public Builder moduleArchive(Path moduleArchive) {
+            this.moduleArchive = moduleArchive;
+            return this;
+        }
+
+        /**
+         * Adds a dependency JAR path, or an exploded class directory.
          *
          * @param dependencyJar the dependency JAR path
          * @return this builder instance
@@ -138,6 +298,26 @@ public final class ModuleSpec {
             return this;
         }
 
+        /**
+         * Adds a library: one or more JARs that together only reference their own classes, the JDK and the
+         * shared packages, e.g. {@code jackson-core}, {@code jackson-annotations} and {@code jackson-databind}.
+         *
+         * <p>If the runtime has a {@link SharedLibraryLayer}, a library is loaded by a class loader of its own
+         * that every module listing JARs with the same content and the same shared packages reuses. Otherwise,
+         * or if a library contains a directory, its JARs are just more dependency JARs of this module. Either
+         * way they come after the adapter and dependency JARs on the module path.</p>
+         *
+         * @param jars the library's JAR paths
+         * @return this builder instance
+         */
+        public Builder library(Path... jars) {
+            if (jars.length == 0) {
+                throw new IllegalArgumentException("A library needs at least one JAR");
+            }
+            this.libraries.add(Arrays.asList(jars.clone()));
+            return this;
+        }
+
         /**
          * Adds one or more shared package names.
          *
@@ -149,6 +329,21 @@ public final class ModuleSpec {
             return this;
         }
 
+        /**
+         * Sets where the module's class loader looks for the classes and resources of a package and its
+         * sub-packages. The most specific package wins, so a rule can carve a sub-package out of a shared
+         * package; a rule for a shared package itself replaces its {@link DelegationRule#PARENT_FIRST}.
+         * Rules for {@code java.*} are ignored: only the JDK can define those classes.
+         *
+         * @param packageName the package name, e.g. {@code com.fasterxml.jackson}
+         * @param rule the rule
+         * @return this builder instance
+         */
+        public Builder packageRule(String packageName, DelegationRule rule) {
+            this.packageRules.put(Objects.requireNonNull(packageName, "packageName"), Objects.requireNonNull(rule, "rule"));
+            return this;
+        }
+
         /**
          * Adds one or more exported class names.
          *
@@ -160,15 +355,111 @@ public final class ModuleSpec {
             return this;
         }
 
+        /**
+         * Exports one or more packages, and their sub-packages, to the modules that import them: their class
+         * loaders look up the classes and resources of these packages in this module's loader directly.
+         *
+         * @param packages the package names to export, e.g. {@code com.acme.billing.api}
+         * @return this builder instance
+         */
+        public Builder exportedPackages(String... packages) {
+            for (String pkg : packages) {
+                this.exportedPackages.add(packageName(pkg));
+            }
+            return this;
+        }
+
+        /**
+         * Imports packages, and their sub-packages, exported by another module: the classes and resources
+         * of these packages are looked up in that module's class loader only, before the parent and this
+         * module's own JARs. Every imported package must lie within a package the other module exports.
+         *
+         * <p>The other module must be loaded first, by the same {@link ModulaRuntime}; a module importing
+         * from another is loaded after it by {@link ModulaRuntime#loadAll}, and a cycle of imports fails the
+         * load. An importing module keeps the class loader it was loaded with, so it is reloaded together with
+         * the modules it imports from.</p>
+         *
+         * @param moduleName the name of the exporting module
+         * @param packages the packages to import; none imports every package the module exports
+         * @return this builder instance
+         */
+        public Builder importPackages(String moduleName, String... packages) {
+            Set<String> imported = this.imports.get(Objects.requireNonNull(moduleName, "moduleName"));
+            if (imported == null) {
+                imported = new LinkedHashSet<>();
+                this.imports.put(moduleName, imported);
+            }
+            for (String pkg : packages) {
+                imported.add(packageName(pkg));
+            }
+            return this;
+        }
+
+        private static String packageName(String pkg) {
+            return pkg.endsWith(".") ? pkg.substring(0, pkg.length() - 1) : pkg;
+        }
+
+        /**
+         * Sets the engine used to read the module's JAR files. Defaults to {@link IoEngine#JAR_FILE}.
+         *
+         * @param ioEngine the I/O engine
+         * @return this builder instance
+         */
+        public Builder ioEngine(IoEngine ioEngine) {
+            this.ioEngine = Objects.requireNonNull(ioEngine, "ioEngine");
+            return this;
+        }
+
+        /**
+         * Sets whether the module's class loader records {@link ModuleMetrics}. Defaults to {@code true}.
+         *
+         * @param metricsEnabled {@code false} to skip recording
+         * @return this builder instance
+         */
+        public Builder metricsEnabled(boolean metricsEnabled) {
+            this.metricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        /**
+         * Adds a transformer applied to every class the module defines from its own JARs, after the
+         * transformers added before it.
+         *
+         * @param transformer the transformer
+         * @return this builder instance
+         */
+        public Builder transformer(ClassTransformer transformer) {
+            this.transformers.add(Objects.requireNonNull(transformer, "transformer"));
+            return this;
+        }
+
+        /**
+         * Caches the transformers' output in the given directory, so that a class is transformed once and not
+         * on every start. Several modules may share the directory.
+         *
+         * @param transformCacheDir the cache directory, created when needed
+         * @return this builder instance
+         */
+        public Builder transformCacheDir(Path transformCacheDir) {
+            this.transformCacheDir = transformCacheDir;
+            return this;
+        }
+
         /**
          * Builds and returns an immutable {@link ModuleSpec} instance.
          *
          * @return the built module spec
-         * @throws IllegalStateException if name, adapterJar, or dependencyJars are not set properly
+         * @throws IllegalStateException if name, adapterJar, or dependencyJars and libraries are not set properly
          */
         public ModuleSpec build() {
-            if (name == null || adapterJar == null || dependencyJars.isEmpty()) {
-                throw new IllegalStateException("name, adapterJar, and at least one dependencyJar are required");
+            if (moduleArchive != null) {
+                if (name == null) {
+                    throw new IllegalStateException("name is required");
+                }
+                return new ModuleSpec(this);
+            }
+            if (name == null || adapterJar == null || (dependencyJars.isEmpty() && libraries.isEmpty())) {
+                throw new IllegalStateException("name, adapterJar, and at least one dependencyJar or library are required");
             }
             return new ModuleSpec(this);
         }
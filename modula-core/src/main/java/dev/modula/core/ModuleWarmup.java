@@ -0,0 +1,203 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * What to do with a freshly loaded module before it serves its first call, see
+ * {@link ModulaRuntime.IsolatedModule#warmUp(ModuleWarmup, java.util.concurrent.Executor)}.
+ *
+ * <p>A warm-up loads and links a list of classes, so that the first requests do not load them one after
+ * another on the request thread, then runs hooks: exported classes implementing {@link Runnable}, whose
+ * singleton instance is run once, e.g. to fill caches or open connections. The class list is the union
+ * of the declared classes, the classes listed in a file (one name per line; blank lines and lines
+ * starting with '#' are skipped), and, unless turned off, the classes the module restored from its
+ * {@link ClassDataCache}, i.e. those a training run recorded.</p>
+ *
+ * <p>Classes are loaded but not initialized: no static initializer runs before the module is called,
+ * except from a hook.</p>
+ */
+public final class ModuleWarmup {
+
+    private final Set<String> classes;
+    private final Path classList;
+    private final boolean cachedClasses;
+    private final List<String> hooks;
+
+    private ModuleWarmup(Builder builder) {
+        this.classes = Collections.unmodifiableSet(new LinkedHashSet<>(builder.classes));
+        this.classList = builder.classList;
+        this.cachedClasses = builder.cachedClasses;
+        this.hooks = Collections.unmodifiableList(new ArrayList<>(builder.hooks));
+    }
+
+    /**
+     * Returns the declared classes to load.
+     *
+     * @return the class names
+     */
+    public Set<String> getClasses() { return classes; }
+
+    /**
+     * Returns the file listing further classes to load.
+     *
+     * @return the class list file, or {@code null} if none
+     */
+    public Path getClassList() { return classList; }
+
+    /**
+     * Returns whether the classes restored from the class data cache are loaded too.
+     *
+     * @return {@code true} if cached classes are warmed up
+     */
+    public boolean isCachedClasses() { return cachedClasses; }
+
+    /**
+     * Returns the exported {@link Runnable} classes run after the classes are loaded, in order.
+     *
+     * @return the hook class names
+     */
+    public List<String> getHooks() { return hooks; }
+
+    /**
+     * Returns the declared classes followed by those of the class list file, without duplicates.
+     *
+     * @return the class names
+     * @throws IOException if the class list file cannot be read
+     */
+    Set<String> readClassNames() throws IOException {
+        Set<String> names = new LinkedHashSet<>(classes);
+        if (classList != null) {
+            for (String line : Files.readAllLines(classList, StandardCharsets.UTF_8)) {
+                String name = line.trim();
+                if (!name.isEmpty() && !name.startsWith("#")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Creates a new {@link Builder}.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder for {@link ModuleWarmup}.
+     */
+    public static final class Builder {
+        private final Set<String> classes = new LinkedHashSet<>();
+        private Path classList;
+        private boolean cachedClasses = true;
+        private final List<String> hooks = new ArrayList<>();
+
+        /**
+         * Adds classes to load and link.
+         *
+         * @param classNames fully qualified class names
+         * @return this builder instance
+         */
+        public Builder classes(String... classNames) {
+            this.classes.addAll(Arrays.asList(classNames));
+            return this;
+        }
+
+        /**
+         * Sets a file listing classes to load and link, one fully qualified name per line.
+         *
+         * @param classList the class list file
+         * @return this builder instance
+         */
+        public Builder classList(Path classList) {
+            this.classList = classList;
+            return this;
+        }
+
+        /**
+         * Sets whether the classes restored from the class data cache are loaded too. Defaults to {@code true}.
+         *
+         * @param cachedClasses {@code false} to skip them
+         * @return this builder instance
+         */
+        public Builder cachedClasses(boolean cachedClasses) {
+            this.cachedClasses = cachedClasses;
+            return this;
+        }
+
+        /**
+         * Adds hooks: exported classes implementing {@link Runnable}, run in order after the classes are loaded.
+         *
+         * @param classNames fully qualified names of exported classes
+         * @return this builder instance
+         */
+        public Builder hooks(String... classNames) {
+            this.hooks.addAll(Arrays.asList(classNames));
+            return this;
+        }
+
+        /**
+         * Builds the warm-up.
+         *
+         * @return the warm-up
+         */
+        public ModuleWarmup build() {
+            return new ModuleWarmup(this);
+        }
+    }
+
+    /**
+     * The outcome of a warm-up. A warm-up never fails the module: classes that cannot be loaded and hooks
+     * that throw are only reported here.
+     */
+    public static final class Result {
+        private final int classesLoaded;
+        private final List<String> classesNotLoaded;
+        private final Map<String, Throwable> hookFailures;
+        private final long nanos;
+
+        Result(int classesLoaded, List<String> classesNotLoaded, Map<String, Throwable> hookFailures, long nanos) {
+            this.classesLoaded = classesLoaded;
+            this.classesNotLoaded = Collections.unmodifiableList(classesNotLoaded);
+            this.hookFailures = Collections.unmodifiableMap(hookFailures);
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the number of classes loaded and linked.
+         *
+         * @return the number of classes
+         */
+        public int getClassesLoaded() { return classesLoaded; }
+
+        /**
+         * Returns the listed classes that could not be loaded or linked, e.g. because the list is outdated.
+         *
+         * @return the class names
+         */
+        public List<String> getClassesNotLoaded() { return classesNotLoaded; }
+
+        /**
+         * Returns the hooks that failed, with their exception, in hook order.
+         *
+         * @return the failures by hook class name
+         */
+        public Map<String, Throwable> getHookFailures() { return hookFailures; }
+
+        /**
+         * Returns how long the warm-up took, in nanoseconds.
+         *
+         * @return the elapsed time
+         */
+        public long getNanos() { return nanos; }
+    }
+}
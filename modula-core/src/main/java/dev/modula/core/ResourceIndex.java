@@ -0,0 +1,90 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index from resource name to every source entry with that name, built once over all
+ * {@link ClassSource}s of a module, in module path order.
+ *
+ * <p>Unlike {@link ClassIndex}, names that occur in several sources keep all of their entries, since
+ * {@link ClassLoader#getResources(String)} must return each of them, e.g. one
+ * {@code META-INF/services/...} file per JAR. Class files are indexed too: frameworks read them as
+ * resources. Most names occur once, so an entry is stored on its own and only duplicates are kept
+ * in an array.</p>
+ */
+final class ResourceIndex {
+
+    /**
+     * Values are either a {@link ClassSource.Entry} or, for duplicate names, a {@code ClassSource.Entry[]}.
+     */
+    private final Map<String, Object> entries;
+
+    private ResourceIndex(Map<String, Object> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Builds the index from the entry lists of the given sources.
+     *
+     * @param sources the module's sources in module path order
+     * @return the resource index
+     */
+    static ResourceIndex build(List<ClassSource> sources) {
+        int expected = 0;
+        for (ClassSource source : sources) {
+            expected += source.entries().size();
+        }
+        Map<String, Object> entries = new HashMap<>(Math.max(16, (int) (expected / 0.75f) + 1));
+        for (ClassSource source : sources) {
+            for (ClassSource.Entry entry : source.entries()) {
+                Object previous = entries.putIfAbsent(entry.getName(), entry);
+                if (previous instanceof ClassSource.Entry) {
+                    entries.put(entry.getName(), new ClassSource.Entry[]{(ClassSource.Entry) previous, entry});
+                } else if (previous != null) {
+                    ClassSource.Entry[] all = (ClassSource.Entry[]) previous;
+                    ClassSource.Entry[] grown = Arrays.copyOf(all, all.length + 1);
+                    grown[all.length] = entry;
+                    entries.put(entry.getName(), grown);
+                }
+            }
+        }
+        return new ResourceIndex(entries);
+    }
+
+    /**
+     * Returns the first entry with the given name in module path order.
+     *
+     * @param name the resource name, e.g. {@code logback.xml}
+     * @return the entry, or {@code null} if no source of the module contains it
+     */
+    ClassSource.Entry first(String name) {
+        Object value = entries.get(name);
+        if (value instanceof ClassSource.Entry[]) {
+            return ((ClassSource.Entry[]) value)[0];
+        }
+        return (ClassSource.Entry) value;
+    }
+
+    /**
+     * Returns every entry with the given name, in module path order.
+     *
+     * @param name the resource name
+     * @return the entries; empty if there are none
+     */
+    List<ClassSource.Entry> all(String name) {
+        Object value = entries.get(name);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof ClassSource.Entry[]) {
+            return Collections.unmodifiableList(Arrays.asList((ClassSource.Entry[]) value));
+        }
+        return Collections.singletonList((ClassSource.Entry) value);
+    }
+}
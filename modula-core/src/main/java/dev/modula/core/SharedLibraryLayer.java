@@ -0,0 +1,202 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import dev.modula.util.ClassLoaderUtil;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An opt-in layer of class loaders for libraries used by several modules, see {@link ModuleSpec.Builder#library}.
+ *
+ * <p>Without it, every module opens, indexes and defines its own copy of each JAR, so twenty modules
+ * using the same {@code guava} pay for twenty open files, twenty central directory parses and twenty
+ * copies of its classes in Metaspace. With it, a library is loaded once, by an intermediate
+ * {@link ModulaClassLoader} whose parent is the module's parent, and each module that lists a library
+ * with the same JAR contents (by SHA-256), in the same order and with the same shared packages and
+ * package rules, delegates to that loader after its own JARs. A library whose JARs differ in any byte,
+ * e.g. another version, gets a loader of its own, so modules stay isolated from each other's versions.</p>
+ *
+ * <p>Library loaders are reference counted: the last module using one closes it. Digests are computed
+ * once per file and reused while its size and modification time do not change.</p>
+ */
+public final class SharedLibraryLayer {
+
+    private final ConcurrentMap<Path, Digest> digests = new ConcurrentHashMap<>();
+
+    /**
+     * Open libraries by key; guarded by {@code this}.
+     */
+    private final Map<Key, Library> libraries = new HashMap<>();
+
+    /**
+     * Returns the number of library loaders currently open.
+     *
+     * @return the number of shared libraries
+     */
+    public synchronized int getLibraryCount() {
+        return libraries.size();
+    }
+
+    /**
+     * Returns the library loader for the given JARs and shared packages, creating it if no module uses it
+     * yet, and counts one more user. Every successful call must be paired with {@link #release(Library)}.
+     *
+     * @param jars the library's JARs
+     * @param spec the module listing the library, for its shared packages and I/O engine
+     * @param parent the parent of the module's loader
+     * @return the library, or {@code null} if it cannot be shared because it contains a directory
+     * @throws IOException if a JAR cannot be read or opened
+     */
+    Library acquire(List<Path> jars, ModuleSpec spec, ClassLoader parent) throws IOException {
+        List<String> contents = new ArrayList<>(jars.size());
+        for (Path jar : jars) {
+            if (!Files.isRegularFile(jar)) {
+                return null;
+            }
+            contents.add(digestOf(jar));
+        }
+        Set<String> sharedPackages = new TreeSet<>(ClassLoaderUtil.normalizeSharedPackages(spec.getSharedPackages()));
+        Key key = new Key(contents, sharedPackages, new TreeMap<>(spec.getPackageRules()), parent);
+        synchronized (this) {
+            Library library = libraries.get(key);
+            if (library == null) {
+                // Named after its first JAR, which also becomes the host of its resource URLs.
+                String name = jars.get(0).getFileName().toString();
+                library = new Library(key, new ModulaClassLoader(name, jars, spec.getIoEngine(),
+                        DelegationPolicy.compile(spec.getSharedPackages(), spec.getPackageRules()), parent));
+                libraries.put(key, library);
+            }
+            library.users++;
+            return library;
+        }
+    }
+
+    /**
+     * Counts one user less, and closes the library loader when it was the last one.
+     *
+     * @param library a library returned by {@link #acquire}
+     * @throws IOException if the library's JARs cannot be closed
+     */
+    void release(Library library) throws IOException {
+        synchronized (this) {
+            if (--library.users > 0) {
+                return;
+            }
+            libraries.remove(library.key);
+        }
+        library.loader.close();
+    }
+
+    private String digestOf(Path jar) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Digest digest = digests.get(jar);
+        if (digest == null || digest.size != size || digest.modified != modified) {
+            digest = new Digest(size, modified, sha256(jar, size));
+            digests.put(jar, digest);
+        }
+        return digest.value;
+    }
+
+    private static String sha256(Path jar, long size) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Integer.MAX_VALUE, size - pos)));
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : md.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A library loader shared by the modules that listed it.
+     */
+    static final class Library {
+        final Key key;
+        final ModulaClassLoader loader;
+        /**
+         * Number of modules using the library; guarded by the layer.
+         */
+        int users;
+
+        Library(Key key, ModulaClassLoader loader) {
+            this.key = key;
+            this.loader = loader;
+        }
+    }
+
+    private static final class Digest {
+        final long size;
+        final long modified;
+        final String value;
+
+        Digest(long size, long modified, String value) {
+            this.size = size;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * What makes two libraries interchangeable: JAR contents in order, the visible shared packages, the package
+     * rules and the parent.
+     */
+    private static final class Key {
+        final List<String> contents;
+        final Set<String> sharedPackages;
+        final Map<String, DelegationRule> packageRules;
+        final ClassLoader parent;
+
+        Key(List<String> contents, Set<String> sharedPackages, Map<String, DelegationRule> packageRules,
+            ClassLoader parent) {
+            this.contents = Collections.unmodifiableList(contents);
+            this.sharedPackages = Collections.unmodifiableSet(sharedPackages);
+            this.packageRules = Collections.unmodifiableMap(packageRules);
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return parent == other.parent && contents.equals(other.contents) && sharedPackages.equals(other.sharedPackages)
+                    && packageRules.equals(other.packageRules);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * contents.hashCode() + sharedPackages.hashCode()) + packageRules.hashCode())
+                    + System.identityHashCode(parent);
+        }
+    }
+}
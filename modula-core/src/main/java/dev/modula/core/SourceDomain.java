@@ -0,0 +1,76 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.ProtectionDomain;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * What a {@link ModulaClassLoader} attaches to every class it defines from one {@link ClassSource}: a single
+ * {@link ProtectionDomain}, created with the loader, and the source's manifest, read when the first package
+ * of the source is defined.
+ *
+ * <p>A module defining tens of thousands of classes thus creates one domain per JAR instead of one per class,
+ * and reads each manifest at most once.</p>
+ */
+final class SourceDomain {
+
+    final ClassSource source;
+
+    /**
+     * Position of {@link #source} on the module path, as recorded in the {@link ClassDataCache}.
+     */
+    final int index;
+
+    final ProtectionDomain protectionDomain;
+
+    /**
+     * The package of the last class defined from {@link #source}; classes of a JAR tend to load package by
+     * package, so this usually spares the package lookup and its name substring.
+     */
+    volatile Package lastPackage;
+
+    private volatile Manifest manifest;
+    private volatile boolean manifestRead;
+
+    SourceDomain(ClassSource source, int index) {
+        this.source = source;
+        this.index = index;
+        this.protectionDomain = new ProtectionDomain(source.getCodeSource(), null);
+    }
+
+    /**
+     * Returns the manifest of the source, reading it on first use.
+     *
+     * @return the manifest, or {@code null} if the source has none or it cannot be read
+     */
+    Manifest manifest() {
+        if (!manifestRead) {
+            synchronized (this) {
+                if (!manifestRead) {
+                    manifest = readManifest(source);
+                    manifestRead = true;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static Manifest readManifest(ClassSource source) {
+        // The manifest is one of the first entries of a JAR, so the scan stops early.
+        for (ClassSource.Entry entry : source.entries()) {
+            if (JarFile.MANIFEST_NAME.equals(entry.getName())) {
+                try (InputStream in = entry.openStream()) {
+                    return new Manifest(in);
+                } catch (IOException e) {
+                    // an unreadable manifest declares nothing: packages are defined without attributes
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,188 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link ClassTransformer} that removes debug attributes the JVM does not need to run a class:
+ * {@code LocalVariableTable} and {@code LocalVariableTypeTable} of every method, {@code SourceDebugExtension}
+ * of the class, and, unless line numbers are kept, {@code LineNumberTable}. Classes then take less Metaspace;
+ * without line numbers, stack traces of the module show no line numbers either.
+ *
+ * <p>The class file is rewritten in a single pass without a bytecode library: the constant pool and all other
+ * attributes are copied unchanged, so the class still verifies. Class files it cannot parse are left alone.</p>
+ */
+public final class StripDebugInfoTransformer implements ClassTransformer {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+
+    private final boolean keepLineNumbers;
+
+    /**
+     * Creates a transformer that also removes line numbers.
+     */
+    public StripDebugInfoTransformer() {
+        this(false);
+    }
+
+    /**
+     * Creates a transformer.
+     *
+     * @param keepLineNumbers {@code true} to keep {@code LineNumberTable}, e.g. for readable stack traces
+     */
+    public StripDebugInfoTransformer(boolean keepLineNumbers) {
+        this.keepLineNumbers = keepLineNumbers;
+    }
+
+    @Override
+    public String getCacheId() {
+        return getClass().getName() + (keepLineNumbers ? "+lines" : "");
+    }
+
+    @Override
+    public byte[] transform(String className, byte[] classFile) throws IOException {
+        try {
+            return strip(classFile);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            // truncated or malformed: defineClass reports it with a proper ClassFormatError
+            return null;
+        }
+    }
+
+    private byte[] strip(byte[] classFile) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(classFile);
+        if (classFile.length < 10 || in.getInt() != 0xCAFEBABE) {
+            return null;
+        }
+        in.position(8);
+        int count = in.getShort() & 0xFFFF;
+        // Start offset of each Utf8 constant, to read attribute names; -1 for other constants.
+        int[] utf8 = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.get() & 0xFF;
+            utf8[i] = -1;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.position();
+                    in.position(in.position() + 2 + (in.getShort(in.position()) & 0xFFFF));
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.position(in.position() + 8);
+                    i++;
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    in.position(in.position() + 4);
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    in.position(in.position() + 2);
+                    break;
+                case 15:
+                    in.position(in.position() + 3);
+                    break;
+                default:
+                    return null; // unknown constant: a newer class file format, leave it alone
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFile.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Constant pool, access flags, this and super class are copied as they are.
+        out.write(classFile, 0, in.position() + 6);
+        in.position(in.position() + 6);
+        int interfaces = in.getShort() & 0xFFFF;
+        out.writeShort(interfaces);
+        out.write(classFile, in.position(), interfaces * 2);
+        in.position(in.position() + interfaces * 2);
+        copyMembers(in, out, classFile, utf8, false);
+        copyMembers(in, out, classFile, utf8, true);
+        copyAttributes(in, out, classFile, utf8, Scope.CLASS);
+        byte[] result = bytes.toByteArray();
+        return result.length == classFile.length ? null : result;
+    }
+
+    private void copyMembers(ByteBuffer in, DataOutputStream out, byte[] classFile, int[] utf8, boolean methods)
+            throws IOException {
+        int count = in.getShort() & 0xFFFF;
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            out.write(classFile, in.position(), 6); // access flags, name, descriptor
+            in.position(in.position() + 6);
+            copyAttributes(in, out, classFile, utf8, methods ? Scope.METHOD : Scope.FIELD);
+        }
+    }
+
+    private void copyAttributes(ByteBuffer in, DataOutputStream out, byte[] classFile, int[] utf8, Scope scope)
+            throws IOException {
+        int count = in.getShort() & 0xFFFF;
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        DataOutputStream keptOut = new DataOutputStream(kept);
+        int keptCount = 0;
+        for (int i = 0; i < count; i++) {
+            int start = in.position();
+            String name = utf8Name(classFile, utf8, in.getShort() & 0xFFFF);
+            int length = in.getInt();
+            int end = in.position() + length;
+            if (scope == Scope.METHOD && "Code".equals(name)) {
+                keptOut.writeShort(in.getShort(start) & 0xFFFF);
+                byte[] code = copyCode(in, classFile, utf8);
+                keptOut.writeInt(code.length);
+                keptOut.write(code);
+                keptCount++;
+            } else if (!strip(name, scope)) {
+                keptOut.write(classFile, start, end - start);
+                keptCount++;
+            }
+            in.position(end);
+        }
+        out.writeShort(keptCount);
+        kept.writeTo(out);
+    }
+
+    /**
+     * Copies the body of a {@code Code} attribute, whose attributes hold the per-method debug tables.
+     */
+    private byte[] copyCode(ByteBuffer in, byte[] classFile, int[] utf8) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int start = in.position();
+        int codeLength = in.getInt(start + 4);
+        int exceptions = in.getShort(start + 8 + codeLength) & 0xFFFF;
+        int headerLength = 8 + codeLength + 2 + exceptions * 8;
+        out.write(classFile, start, headerLength);
+        in.position(start + headerLength);
+        copyAttributes(in, out, classFile, utf8, Scope.CODE);
+        return bytes.toByteArray();
+    }
+
+    private boolean strip(String name, Scope scope) {
+        switch (scope) {
+            case CODE:
+                return "LocalVariableTable".equals(name) || "LocalVariableTypeTable".equals(name)
+                        || (!keepLineNumbers && "LineNumberTable".equals(name));
+            case CLASS:
+                return "SourceDebugExtension".equals(name);
+            default:
+                return false;
+        }
+    }
+
+    private static String utf8Name(byte[] classFile, int[] utf8, int index) {
+        if (index <= 0 || index >= utf8.length || utf8[index] < 0) {
+            return "";
+        }
+        int offset = utf8[index];
+        int length = ((classFile[offset] & 0xFF) << 8) | (classFile[offset + 1] & 0xFF);
+        // Attribute names are ASCII; any other name simply matches nothing.
+        return new String(classFile, offset + 2, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private enum Scope { CLASS, FIELD, METHOD, CODE }
+}
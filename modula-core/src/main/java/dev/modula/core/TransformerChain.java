@@ -0,0 +1,145 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * The {@link ClassTransformer}s of a module applied in order, with an optional on-disk cache of their output.
+ *
+ * <p>A cache file is named after the SHA-256 of the chain's cache ids, the class name and the input bytes,
+ * so a class is transformed again only if its bytes or the chain changed. An empty file records that the
+ * chain left the class unchanged. The cache is best effort: a file that cannot be read or written is
+ * ignored and the class is transformed in memory.</p>
+ */
+final class TransformerChain {
+
+    private final List<ClassTransformer> transformers;
+    private final Path cacheDir;
+    private final byte[] chainId;
+
+    private TransformerChain(List<ClassTransformer> transformers, Path cacheDir) {
+        this.transformers = transformers;
+        this.cacheDir = cacheDir;
+        StringBuilder id = new StringBuilder();
+        for (ClassTransformer transformer : transformers) {
+            id.append(transformer.getCacheId()).append('\n');
+        }
+        this.chainId = id.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the chain of a module.
+     *
+     * @return the chain, or {@code null} if the module has no transformers
+     */
+    static TransformerChain of(ModuleSpec spec) {
+        if (spec.getTransformers().isEmpty()) {
+            return null;
+        }
+        return new TransformerChain(spec.getTransformers(), spec.getTransformCacheDir());
+    }
+
+    /**
+     * Returns a fingerprint of the chain, which becomes part of the module's {@link ClassDataCache} key.
+     *
+     * @return the fingerprint
+     */
+    long fingerprint() {
+        byte[] digest = newDigest().digest(chainId);
+        return ByteBuffer.wrap(digest).getLong();
+    }
+
+    /**
+     * Transforms a class.
+     *
+     * @param className the fully qualified class name
+     * @param input the class file; its remaining bytes are read but not consumed
+     * @return the transformed class file, or {@code input} if the chain left it unchanged
+     * @throws Exception if a transformer fails
+     */
+    ByteBuffer transform(String className, ByteBuffer input) throws Exception {
+        byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+        Path file = null;
+        if (cacheDir != null) {
+            file = cacheFile(className, bytes);
+            try {
+                byte[] cached = Files.readAllBytes(file);
+                return cached.length == 0 ? input : ByteBuffer.wrap(cached);
+            } catch (NoSuchFileException e) {
+                // first time for this input: transform below
+            } catch (IOException e) {
+                file = null;
+            }
+        }
+        byte[] output = bytes;
+        for (ClassTransformer transformer : transformers) {
+            byte[] result = transformer.transform(className, output);
+            if (result != null) {
+                output = result;
+            }
+        }
+        boolean unchanged = output == bytes;
+        if (file != null) {
+            store(file, unchanged ? new byte[0] : output);
+        }
+        return unchanged ? input : ByteBuffer.wrap(output);
+    }
+
+    private Path cacheFile(String className, byte[] bytes) {
+        MessageDigest md = newDigest();
+        md.update(chainId);
+        md.update(className.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(bytes);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : md.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return cacheDir.resolve(hex.substring(0, 2)).resolve(hex + ".class");
+    }
+
+    private static void store(Path file, byte[] bytes) {
+        Path tmp = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                out.write(bytes);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // best effort: the class is transformed again next time
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // nothing left to do
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package dev.modula.demo.spring.boot.controller;
 
 import dev.modula.samplemodule.one.api.GreetingService;
 import dev.modula.samplemodule.two.api.TalkingService;
+import dev.modula.core.InstanceScope;
 import dev.modula.spring.boot.ModulaModuleManager;
 import ch.qos.logback.classic.LoggerContext;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -32,21 +33,26 @@ public class SampleModuleOneController {
                 logbackJar
         );
 
-        // 从名为 "samplemodule-one" 的模块中获取 GreetingServiceImpl 实例
-        GreetingService service1 = moduleManager.getInstance(
+        // 调用名为 "samplemodule-one" 的模块中的 GreetingServiceImpl 单例（每个请求都会调用，避免重复创建）；
+        // 调用经过模块的隔舱（bulkhead）限流，并在模块重载时被等待
+        String greeting = moduleManager.invoke(
                 "samplemodule-one",
                 "dev.modula.samplemodule.one.impl.GreetingServiceImpl",
-                GreetingService.class
+                GreetingService.class,
+                InstanceScope.SINGLETON,
+                GreetingService::greet
         );
 
-        // 从名为 "samplemodule-two" 的模块中获取 TalkingServiceImpl 实例
-        TalkingService service2 = moduleManager.getInstance(
+        // 调用名为 "samplemodule-two" 的模块中的 TalkingServiceImpl
+        String talk = moduleManager.invoke(
                 "samplemodule-two",
                 "dev.modula.samplemodule.two.impl.TalkingServiceImpl",
-                TalkingService.class
+                TalkingService.class,
+                InstanceScope.SINGLETON,
+                TalkingService::talk
         );
 
-        resp += "<br/>" + service1.greet() + "<br/>" + service2.talk();
+        resp += "<br/>" + greeting + "<br/>" + talk;
         return resp;
     }
 
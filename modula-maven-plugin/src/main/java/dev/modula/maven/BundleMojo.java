@@ -0,0 +1,151 @@
+// SPDX-License-Identifier: Apache-2.0
+// Copyright (c) 2015 Modula Authors. All rights reserved.
+package dev.modula.maven;
+
+import dev.modula.core.ModuleBundle;
+import dev.modula.core.ModuleBundleWriter;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packages a module's adapter JAR and its runtime dependencies into a module bundle, see {@link ModuleBundle}.
+ *
+ * <p>The dependencies are those of scope {@code compile} and {@code runtime}, in the order Maven resolved them,
+ * which becomes the module path order; the API the application shares with the module is usually
+ * {@code provided} and therefore left out. The bundle is attached to the project with the classifier
+ * {@code modula} and type {@code zip}, so {@code install} and {@code deploy} publish it.</p>
+ *
+ * <p>Classes found in more than one JAR are listed in the bundle's conflict report and logged: identical copies
+ * at debug level, differing ones as warnings, or as a build failure with {@code failOnConflict}.</p>
+ */
+@Mojo(name = "bundle", defaultPhase = LifecyclePhase.PACKAGE,
+        requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
+public class BundleMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Component
+    private MavenProjectHelper projectHelper;
+
+    /**
+     * The name of the module, recorded in the bundle.
+     */
+    @Parameter(property = "modula.moduleName", defaultValue = "${project.artifactId}")
+    private String moduleName;
+
+    /**
+     * The adapter JAR, first on the module path.
+     */
+    @Parameter(property = "modula.adapterJar",
+            defaultValue = "${project.build.directory}/${project.build.finalName}.jar")
+    private File adapterJar;
+
+    /**
+     * The bundle to write.
+     */
+    @Parameter(property = "modula.outputFile",
+            defaultValue = "${project.build.directory}/${project.build.finalName}-modula.zip")
+    private File outputFile;
+
+    /**
+     * Packages, with their sub-packages, that other modules may import; each must contain a class.
+     */
+    @Parameter
+    private List<String> exportedPackages = new ArrayList<>();
+
+    /**
+     * Artifact ids of dependencies not to bundle, e.g. an API that the application provides.
+     */
+    @Parameter
+    private List<String> excludeArtifactIds = new ArrayList<>();
+
+    /**
+     * Whether a class found with different bytes in two JARs fails the build.
+     */
+    @Parameter(property = "modula.failOnConflict", defaultValue = "false")
+    private boolean failOnConflict;
+
+    /**
+     * The classifier the bundle is attached with; empty to not attach it.
+     */
+    @Parameter(property = "modula.classifier", defaultValue = "modula")
+    private String classifier;
+
+    @Parameter(property = "modula.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping Modula module bundle");
+            return;
+        }
+        if (!adapterJar.isFile()) {
+            throw new MojoExecutionException("Adapter JAR " + adapterJar + " does not exist; bind the bundle goal"
+                    + " after the JAR is packaged or set adapterJar");
+        }
+        ModuleBundleWriter.Builder builder = ModuleBundleWriter.builder(moduleName)
+                .adapterJar(adapterJar.toPath())
+                .exportedPackages(exportedPackages.toArray(new String[0]));
+        for (Artifact artifact : project.getArtifacts()) {
+            if (isBundled(artifact)) {
+                builder.dependencyJar(artifact.getFile().toPath());
+            }
+        }
+
+        ModuleBundle bundle;
+        try {
+            bundle = builder.build().write(outputFile.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write module bundle " + outputFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException(e.getMessage(), e);
+        }
+
+        int differing = 0;
+        for (ModuleBundle.Conflict conflict : bundle.getConflicts()) {
+            if (conflict.isIdentical()) {
+                getLog().debug("Shadowed class: " + conflict);
+            } else {
+                getLog().warn("Shadowed class: " + conflict);
+                differing++;
+            }
+        }
+        getLog().info("Module bundle " + outputFile + ": " + bundle.getJarDigests().size() + " JARs, "
+                + bundle.getConflicts().size() + " shadowed classes, digest " + bundle.getDigest());
+        if (failOnConflict && differing > 0) {
+            throw new MojoFailureException(differing + " classes of module '" + moduleName
+                    + "' differ between JARs, see " + ModuleBundle.CONFLICTS_ENTRY + " in " + outputFile);
+        }
+        if (classifier != null && !classifier.isEmpty()) {
+            projectHelper.attachArtifact(project, "zip", classifier, outputFile);
+        }
+    }
+
+    private boolean isBundled(Artifact artifact) {
+        String scope = artifact.getScope();
+        if (!Artifact.SCOPE_COMPILE.equals(scope) && !Artifact.SCOPE_RUNTIME.equals(scope)) {
+            return false;
+        }
+        if (excludeArtifactIds.contains(artifact.getArtifactId())) {
+            return false;
+        }
+        File file = artifact.getFile();
+        return file != null && file.isFile() && artifact.getArtifactHandler().isAddedToClasspath();
+    }
+}
@@ -0,0 +1,335 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ManagedModule.java
+
+package dev.modula.spring.boot;
+
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ModuleMetrics;
+import dev.modula.core.ModuleSpec;
+import dev.modula.core.ModuleWarmup;
+import dev.modula.core.ModulaRuntime;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A configured module as seen by {@link ModulaModuleManager}: its spec, how it is loaded, and,
+ * once loaded, the {@link ModulaRuntime.IsolatedModule} and how long loading took.
+ *
+ * <p>The loaded module can be swapped for a new version at runtime: the new version is loaded next
+ * to the old one, lookups switch over atomically, then the old one is drained and closed.</p>
+ *
+ * <p>If the module has a {@link ModuleWarmup}, every loaded version is warmed up before it becomes visible
+ * to lookups, for at most the warm-up timeout.</p>
+ *
+ * <p>The module moves through the {@link ModuleState}s; {@link #whenReady()} tells without blocking when it
+ * can serve calls, e.g. to route requests away from a module that is still warming up.</p>
+ *
+ * <p>A module importing packages from other modules loads them first, whatever their load mode. It keeps
+ * the versions it was loaded with, so {@link ModulaModuleManager#reload} reloads it after a module it imports
+ * from.</p>
+ *
+ * <p>A module may have a {@link Bulkhead} bounding the calls made through {@link ModulaModuleManager#invoke};
+ * it outlives reloads, so its limits and counters cover every version of the module.</p>
+ */
+public final class ManagedModule {
+
+    private static final Log log = LogFactory.getLog(ManagedModule.class);
+
+    private final String name;
+    private final ModulaProperties.LoadMode loadMode;
+    private final ModulaRuntime runtime;
+    private final ModuleWarmup warmup;
+    private final Executor warmupExecutor;
+    private final Duration warmupTimeout;
+    private final List<ManagedModule> imports;
+    private final Bulkhead bulkhead;
+
+    private volatile ModuleSpec spec;
+    private volatile ModulaRuntime.IsolatedModule module;
+    private volatile long loadNanos = -1;
+    private volatile boolean unloaded;
+    private volatile ModuleState state;
+    private volatile Throwable failure;
+
+    /**
+     * Completed with this module once it is {@link ModuleState#READY}; replaced by a new one when a failed
+     * module is tried again. Completes exceptionally on failure or unload.
+     */
+    private volatile CompletableFuture<ManagedModule> ready = new CompletableFuture<>();
+
+    ManagedModule(ModuleSpec spec, ModulaProperties.LoadMode loadMode, ModulaRuntime runtime) {
+        this(spec, loadMode, runtime, null, null, Duration.ZERO, Collections.<ManagedModule>emptyList(), null);
+    }
+
+    ManagedModule(ModuleSpec spec, ModulaProperties.LoadMode loadMode, ModulaRuntime runtime,
+                  ModuleWarmup warmup, Executor warmupExecutor, Duration warmupTimeout, List<ManagedModule> imports,
+                  Bulkhead bulkhead) {
+        this.name = spec.getName();
+        this.spec = spec;
+        this.loadMode = loadMode;
+        this.runtime = runtime;
+        this.warmup = warmup;
+        this.warmupExecutor = warmupExecutor;
+        this.warmupTimeout = warmupTimeout;
+        this.imports = imports;
+        this.bulkhead = bulkhead;
+        this.state = ModuleState.NOT_LOADED;
+    }
+
+    public String getName() { return name; }
+
+    public ModuleSpec getSpec() { return spec; }
+
+    public ModulaProperties.LoadMode getLoadMode() { return loadMode; }
+
+    /**
+     * Returns the modules this module imports packages from.
+     */
+    public List<ManagedModule> getImports() { return imports; }
+
+    /**
+     * Returns the bulkhead of the module's calls, or {@code null} if they are not bounded.
+     */
+    public Bulkhead getBulkhead() { return bulkhead; }
+
+    public boolean isLoaded() { return module != null; }
+
+    public ModuleState getState() { return state; }
+
+    public boolean isReady() { return state == ModuleState.READY; }
+
+    /**
+     * Returns why the last load attempt failed, or {@code null} unless the module is {@link ModuleState#FAILED}.
+     */
+    public Throwable getFailure() { return failure; }
+
+    /**
+     * Returns a future completed with this module once it is {@link ModuleState#READY}, at once if it already is.
+     * It completes exceptionally if the pending load attempt fails or the module is unloaded. It does not
+     * load a lazy module by itself.
+     */
+    public CompletableFuture<ManagedModule> whenReady() {
+        // A dependent stage, so that callers cannot complete the module's own future.
+        return ready.thenApply(Function.identity());
+    }
+
+    /**
+     * Returns the class loading metrics of the loaded version, or {@code null} if the module is not loaded.
+     */
+    public ModuleMetrics getMetrics() {
+        ModulaRuntime.IsolatedModule m = module;
+        return m == null ? null : m.getMetrics();
+    }
+
+    /**
+     * Returns how long loading the current version of the module took, or -1 if it has not been loaded yet.
+     */
+    public long getLoadTimeMillis() {
+        long nanos = loadNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Returns the loaded module, loading it first if needed (lazy modules load on first use).
+     */
+    ModulaRuntime.IsolatedModule get() {
+        ModulaRuntime.IsolatedModule m = module;
+        if (m != null) {
+            return m;
+        }
+        synchronized (this) {
+            if (unloaded) {
+                throw new IllegalStateException("Module unloaded: " + name);
+            }
+            if (module == null) {
+                starting();
+                ModulaRuntime.IsolatedModule loaded;
+                long start = System.nanoTime();
+                try {
+                    for (ManagedModule exporter : imports) {
+                        exporter.get();
+                    }
+                    loaded = runtime.load(spec);
+                } catch (RuntimeException | Error e) {
+                    failed(e);
+                    throw e;
+                }
+                loadNanos = System.nanoTime() - start;
+                state = ModuleState.WARMING;
+                warmUp(loaded);
+                module = loaded;
+                ready();
+                if (loadMode == ModulaProperties.LoadMode.LAZY) {
+                    log.info("Modula module '" + name + "' loaded on first use in " + getLoadTimeMillis() + " ms");
+                }
+            }
+            return module;
+        }
+    }
+
+    /**
+     * Loads {@code newSpec} next to the current version, switches lookups to it, then drains and closes
+     * the previous version. If loading fails, the current version stays in place.
+     */
+    void swap(ModuleSpec newSpec, Duration drainTimeout) {
+        retire(replace(newSpec), drainTimeout);
+    }
+
+    /**
+     * Loads {@code newSpec} next to the current version and switches lookups to it. If loading fails, the
+     * current version stays in place.
+     *
+     * @return the previous version, still open, for {@link #retire}; {@code null} if there was none
+     */
+    ModulaRuntime.IsolatedModule replace(ModuleSpec newSpec) {
+        if (!name.equals(newSpec.getName())) {
+            throw new IllegalArgumentException("Cannot replace module '" + name + "' with '" + newSpec.getName() + "'");
+        }
+        ModulaRuntime.IsolatedModule running = module;
+        List<Path> overwritten = running == null ? Collections.<Path>emptyList() : running.getFilesChangedInPlace();
+        if (!overwritten.isEmpty()) {
+            log.warn("Modula module '" + name + "': " + overwritten + " overwritten in place while the running"
+                    + " version reads them; it may fail, or crash the JVM, until it is drained and closed. Write new"
+                    + " versions to a new file and rename it into place");
+        }
+        for (ManagedModule exporter : imports) {
+            exporter.get();
+        }
+        long start = System.nanoTime();
+        ModulaRuntime.IsolatedModule loaded = runtime.load(newSpec);
+        long nanos = System.nanoTime() - start;
+        warmUp(loaded);
+        ModulaRuntime.IsolatedModule previous;
+        synchronized (this) {
+            if (unloaded) {
+                retire(loaded, Duration.ZERO);
+                throw new IllegalStateException("Module unloaded: " + name);
+            }
+            previous = module;
+            spec = newSpec;
+            loadNanos = nanos;
+            module = loaded;
+            ready();
+        }
+        log.info("Modula module '" + name + "' reloaded in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+        return previous;
+    }
+
+    /**
+     * Closes the current version, if loaded, waiting up to {@code drainTimeout} for in-flight calls.
+     * The module cannot be loaded again afterwards.
+     */
+    void unload(Duration drainTimeout) {
+        ModulaRuntime.IsolatedModule previous;
+        synchronized (this) {
+            unloaded = true;
+            previous = module;
+            module = null;
+            loadNanos = -1;
+            state = ModuleState.DRAINING;
+            IllegalStateException gone = new IllegalStateException("Module unloaded: " + name);
+            if (!ready.completeExceptionally(gone)) {
+                CompletableFuture<ManagedModule> failed = new CompletableFuture<>();
+                failed.completeExceptionally(gone);
+                ready = failed;
+            }
+        }
+        try {
+            retire(previous, drainTimeout);
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.close();
+            }
+            state = ModuleState.UNLOADED;
+        }
+    }
+
+    /**
+     * Enters {@link ModuleState#LOADING}; a retry after a failure gets a fresh readiness future. Called under the lock.
+     */
+    private void starting() {
+        if (ready.isCompletedExceptionally()) {
+            ready = new CompletableFuture<>();
+        }
+        failure = null;
+        state = ModuleState.LOADING;
+    }
+
+    private void failed(Throwable e) {
+        failure = e;
+        state = ModuleState.FAILED;
+        ready.completeExceptionally(e);
+    }
+
+    /**
+     * Enters {@link ModuleState#READY}. Called under the lock.
+     */
+    private void ready() {
+        if (ready.isCompletedExceptionally()) {
+            ready = new CompletableFuture<>();
+        }
+        failure = null;
+        state = ModuleState.READY;
+        ready.complete(this);
+    }
+
+    /**
+     * Runs the module's warm-up, if any, and waits for it up to the warm-up timeout. Failures are logged only:
+     * a module that was not fully warmed up is still served.
+     */
+    private void warmUp(ModulaRuntime.IsolatedModule loaded) {
+        if (warmup == null) {
+            return;
+        }
+        Future<ModuleWarmup.Result> future = loaded.warmUp(warmup, warmupExecutor);
+        try {
+            ModuleWarmup.Result result = future.get(warmupTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Modula module '" + name + "' warmed up in " + TimeUnit.NANOSECONDS.toMillis(result.getNanos())
+                    + " ms: " + result.getClassesLoaded() + " classes loaded, " + result.getClassesNotLoaded().size()
+                    + " not found, " + warmup.getHooks().size() + " hooks");
+            if (!result.getClassesNotLoaded().isEmpty() && log.isDebugEnabled()) {
+                log.debug("Modula module '" + name + "' warm-up classes not loaded: " + result.getClassesNotLoaded());
+            }
+            for (Map.Entry<String, Throwable> failure : result.getHookFailures().entrySet()) {
+                log.warn("Modula module '" + name + "' warm-up hook " + failure.getKey() + " failed", failure.getValue());
+            }
+        } catch (TimeoutException e) {
+            log.warn("Modula module '" + name + "' still warming up after " + warmupTimeout + ", serving it anyway");
+        } catch (ExecutionException e) {
+            log.warn("Modula module '" + name + "' warm-up failed, serving it anyway", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while warming up Modula module '" + name + "', serving it anyway");
+        }
+    }
+
+    /**
+     * Drains and closes a version of the module that lookups no longer return.
+     */
+    void retire(ModulaRuntime.IsolatedModule previous, Duration drainTimeout) {
+        if (previous == null) {
+            return;
+        }
+        try {
+            if (!previous.close(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Modula module '" + name + "' closed with " + previous.getInFlightCalls()
+                        + " calls still in flight after " + drainTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while draining Modula module '" + name + "', closed it anyway");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaActuatorAutoConfiguration.java
+
+package dev.modula.spring.boot;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes module states through the {@code modula} Actuator endpoint and health contributor when Actuator
+ * is on the classpath.
+ */
+@Configuration
+@ConditionalOnClass({Endpoint.class, HealthIndicator.class})
+@ConditionalOnBean(ModulaModuleManager.class)
+@AutoConfigureAfter(ModulaAutoConfiguration.class)
+public class ModulaActuatorAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ModulaEndpoint modulaEndpoint(ModulaModuleManager moduleManager) {
+        return new ModulaEndpoint(moduleManager);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "modulaHealthIndicator")
+    public ModulaHealthIndicator modulaHealthIndicator(ModulaModuleManager moduleManager) {
+        return new ModulaHealthIndicator(moduleManager);
+    }
+}
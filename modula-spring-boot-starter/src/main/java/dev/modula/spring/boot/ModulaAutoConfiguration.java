@@ -2,45 +2,280 @@
 
 package dev.modula.spring.boot;
 
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ClassDataCache;
+import dev.modula.core.ClassTransformer;
+import dev.modula.core.DelegationRule;
+import dev.modula.core.LoaderLeakDetector;
+import dev.modula.core.ModuleBundle;
 import dev.modula.core.ModuleSpec;
+import dev.modula.core.ModuleWarmup;
 import dev.modula.core.ModulaRuntime;
+import dev.modula.core.SharedLibraryLayer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 @ConditionalOnClass(ModulaRuntime.class)
 @EnableConfigurationProperties(ModulaProperties.class)
 public class ModulaAutoConfiguration {
 
-    private final Map<String, ModulaRuntime.IsolatedModule> moduleRegistry = new ConcurrentHashMap<>();
+    private static final Log log = LogFactory.getLog(ModulaAutoConfiguration.class);
+
+    private final Map<String, ManagedModule> moduleRegistry = new ConcurrentHashMap<>();
+    private final ModulaProperties properties;
+    private final ModulaRuntime runtime;
+
+    /**
+     * Runs module warm-ups; its threads start on first use and stop when idle.
+     */
+    private final ThreadPoolExecutor warmupExecutor;
 
     public ModulaAutoConfiguration(ModulaProperties properties) {
-        ModulaRuntime runtime = new ModulaRuntime();
+        this.properties = properties;
+        ModulaProperties.ClassDataCacheDef cacheDef = properties.getClassDataCache();
+        this.runtime = new ModulaRuntime(
+                new LoaderLeakDetector(properties.getLeakDetection().getGracePeriod().toMillis(), TimeUnit.MILLISECONDS),
+                cacheDef.getDir() == null ? null : new ClassDataCache(cacheDef.getDir(), cacheDef.getMode()),
+                properties.getSharedLibraries().isEnabled() ? new SharedLibraryLayer() : null);
+        if (cacheDef.getDir() != null) {
+            log.info("Modula class data cache in " + cacheDef.getDir() + ", mode " + cacheDef.getMode());
+        }
+        int warmupThreads = Math.max(1, properties.getWarmup().getThreads());
+        this.warmupExecutor = new ThreadPoolExecutor(warmupThreads, warmupThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("modula-warmup-"));
+        warmupExecutor.allowCoreThreadTimeOut(true);
+        Map<String, ModulaProperties.ModuleDef> defs = new LinkedHashMap<>();
+        List<ModuleSpec> specs = new ArrayList<>();
         for (ModulaProperties.ModuleDef def : properties.getModules()) {
             ModuleSpec.Builder builder = ModuleSpec.builder()
                     .name(def.getName())
                     .adapterJar(def.getAdapterJar())
+                    .moduleArchive(def.getModuleArchive())
                     .sharedPackages(def.getSharedPackages().toArray(new String[0]))
-                    .exportedClasses(def.getExportedClasses().toArray(new String[0]));
+                    .exportedClasses(def.getExportedClasses().toArray(new String[0]))
+                    .exportedPackages(exportedPackagesOf(def))
+                    .ioEngine(def.getIoEngine())
+                    .metricsEnabled(properties.getMetrics().isEnabled())
+                    .transformCacheDir(def.getTransformCacheDir());
 
             for (Path dep : def.getDependencyJars()) {
                 builder.dependencyJar(dep);
             }
+            for (List<Path> library : def.getLibraries()) {
+                builder.library(library.toArray(new Path[0]));
+            }
+            packageRules(builder, def.getPackageRules());
+            for (Map.Entry<String, Set<String>> imported : def.getImports().entrySet()) {
+                builder.importPackages(imported.getKey(), imported.getValue().toArray(new String[0]));
+            }
+            for (String transformer : def.getTransformers()) {
+                builder.transformer(newTransformer(def.getName(), transformer));
+            }
 
-            ModuleSpec spec = builder.build();
-            ModulaRuntime.IsolatedModule module = runtime.load(spec);
+            defs.put(def.getName(), def);
+            specs.add(builder.build());
+        }
+        // Unknown modules, missing exports and import cycles fail startup here, before anything is loaded.
+        List<ManagedModule> parallel = new ArrayList<>();
+        for (ModuleSpec spec : runtime.resolve(specs)) {
+            ModulaProperties.ModuleDef def = defs.get(spec.getName());
+            List<ManagedModule> imports = new ArrayList<>();
+            for (String exporter : spec.getImports().keySet()) {
+                imports.add(moduleRegistry.get(exporter));
+            }
+            ManagedModule module = new ManagedModule(spec, def.getLoadMode(), runtime, warmupOf(def.getWarmup()),
+                    warmupExecutor, properties.getWarmup().getTimeout(), imports, bulkheadOf(def));
             moduleRegistry.put(def.getName(), module);
+            switch (def.getLoadMode()) {
+                case EAGER:
+                    module.get();
+                    break;
+                case EAGER_PARALLEL:
+                    parallel.add(module);
+                    break;
+                default:
+                    // LAZY: loaded by the first ModulaModuleManager.getInstance call
+                    break;
+            }
+        }
+        loadInParallel(parallel, properties.getLoadParallelism());
+        logLoadTimes(properties);
+        if (runtime.getSharedLibraryLayer() != null) {
+            log.info("Modula shared libraries: " + runtime.getSharedLibraryLayer().getLibraryCount() + " loader(s)");
         }
     }
 
     @Bean
     public ModulaModuleManager modulaModuleManager() {
-        return new ModulaModuleManager(moduleRegistry);
+        return new ModulaModuleManager(moduleRegistry, properties.getDrainTimeout());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "modula.metrics", name = "enabled", matchIfMissing = true)
+    public ModulaMetricsMBeans modulaMetricsMBeans() {
+        return new ModulaMetricsMBeans(moduleRegistry.values());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "modula.leak-detection", name = "enabled", matchIfMissing = true)
+    public ModulaLeakMonitor modulaLeakMonitor() {
+        return new ModulaLeakMonitor(runtime.getLeakDetector(), properties.getLeakDetection().getGracePeriod());
+    }
+
+    private static ModuleWarmup warmupOf(ModulaProperties.WarmupDef def) {
+        if (!def.isEnabled()) {
+            return null;
+        }
+        return ModuleWarmup.builder()
+                .classes(def.getClasses().toArray(new String[0]))
+                .classList(def.getClassList())
+                .cachedClasses(def.isCachedClasses())
+                .hooks(def.getHooks().toArray(new String[0]))
+                .build();
+    }
+
+    /**
+     * Returns the configured exported packages or, if there are none, those recorded in the module's bundle.
+     */
+    private static String[] exportedPackagesOf(ModulaProperties.ModuleDef def) {
+        if (def.getExportedPackages().isEmpty() && def.getModuleArchive() != null) {
+            try {
+                ModuleBundle bundle = ModuleBundle.read(def.getModuleArchive());
+                if (bundle != null) {
+                    return bundle.getExportedPackages().toArray(new String[0]);
+                }
+            } catch (IOException e) {
+                // Loading the module reports the unreadable archive.
+                log.debug("Cannot read the index of Modula module archive " + def.getModuleArchive(), e);
+            }
+        }
+        return def.getExportedPackages().toArray(new String[0]);
+    }
+
+    private static Bulkhead bulkheadOf(ModulaProperties.ModuleDef def) {
+        ModulaProperties.BulkheadDef bulkhead = def.getBulkhead();
+        if (!bulkhead.isEnabled()) {
+            return null;
+        }
+        return Bulkhead.builder(def.getName())
+                .maxConcurrentCalls(bulkhead.getMaxConcurrentCalls())
+                .maxQueuedCalls(bulkhead.getMaxQueuedCalls())
+                .maxWait(bulkhead.getMaxWait().toNanos(), TimeUnit.NANOSECONDS)
+                .threads(bulkhead.getThreads())
+                .build();
+    }
+
+    private static void packageRules(ModuleSpec.Builder builder, ModulaProperties.PackageRulesDef def) {
+        for (String pkg : def.getParentFirst()) {
+            builder.packageRule(pkg, DelegationRule.PARENT_FIRST);
+        }
+        for (String pkg : def.getChildFirst()) {
+            builder.packageRule(pkg, DelegationRule.CHILD_FIRST);
+        }
+        for (String pkg : def.getParentOnly()) {
+            builder.packageRule(pkg, DelegationRule.PARENT_ONLY);
+        }
+        for (String pkg : def.getModuleOnly()) {
+            builder.packageRule(pkg, DelegationRule.MODULE_ONLY);
+        }
+    }
+
+    /**
+     * Instantiates a transformer class visible to the application, not to the module.
+     */
+    private static ClassTransformer newTransformer(String moduleName, String className) {
+        try {
+            Class<?> type = Class.forName(className, true, ModulaAutoConfiguration.class.getClassLoader());
+            return type.asSubclass(ClassTransformer.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Invalid class transformer " + className + " for Modula module '"
+                    + moduleName + "'", e);
+        }
+    }
+
+    /**
+     * Loads the given modules on a bounded pool, each once the modules it imports from are loaded, and waits
+     * for all of them; the first failure fails startup.
+     */
+    private static void loadInParallel(List<ManagedModule> modules, int parallelism) {
+        if (modules.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, modules.size())), new DaemonThreadFactory("modula-loader-"));
+        try {
+            // The modules come in import order, so the futures of a module's imports exist before its own.
+            Map<ManagedModule, CompletableFuture<Void>> futures = new HashMap<>();
+            for (ManagedModule module : modules) {
+                List<CompletableFuture<Void>> imports = new ArrayList<>();
+                for (ManagedModule exporter : module.getImports()) {
+                    CompletableFuture<Void> loading = futures.get(exporter);
+                    if (loading != null) {
+                        imports.add(loading);
+                    }
+                }
+                futures.put(module, CompletableFuture.allOf(imports.toArray(new CompletableFuture<?>[0]))
+                        .thenRunAsync(module::get, executor));
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void logLoadTimes(ModulaProperties properties) {
+        for (ModulaProperties.ModuleDef def : properties.getModules()) {
+            ManagedModule module = moduleRegistry.get(def.getName());
+            if (module.isLoaded()) {
+                log.info("Modula module '" + module.getName() + "' loaded in " + module.getLoadTimeMillis()
+                        + " ms (" + module.getLoadMode() + ")");
+            } else {
+                log.info("Modula module '" + module.getName() + "' will be loaded on first use ("
+                        + module.getLoadMode() + ")");
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
-}
\ No newline at end of file
+}
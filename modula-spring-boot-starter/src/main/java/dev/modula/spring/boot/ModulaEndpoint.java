@@ -0,0 +1,76 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaEndpoint.java
+
+package dev.modula.spring.boot;
+
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ModuleMetrics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /actuator/modula}: the state, load time and class count of every module,
+ * or of one module at {@code /actuator/modula/{name}}.
+ */
+@Endpoint(id = "modula")
+public class ModulaEndpoint {
+
+    private final ModulaModuleManager moduleManager;
+
+    public ModulaEndpoint(ModulaModuleManager moduleManager) {
+        this.moduleManager = moduleManager;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> modules() {
+        Map<String, Map<String, Object>> modules = new LinkedHashMap<>();
+        for (ManagedModule module : moduleManager.getModules()) {
+            modules.put(module.getName(), describe(module));
+        }
+        return modules;
+    }
+
+    /**
+     * Returns one module, or {@code null} (HTTP 404) if there is no such module.
+     */
+    @ReadOperation
+    public Map<String, Object> module(@Selector String name) {
+        for (ManagedModule module : moduleManager.getModules()) {
+            if (module.getName().equals(name)) {
+                return describe(module);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Describes a module; also used for the details of {@link ModulaHealthIndicator}.
+     */
+    static Map<String, Object> describe(ManagedModule module) {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", module.getState());
+        details.put("loadMode", module.getLoadMode());
+        details.put("loadTimeMillis", module.getLoadTimeMillis());
+        ModuleMetrics metrics = module.getMetrics();
+        if (metrics != null && metrics.isEnabled()) {
+            details.put("classesDefined", metrics.getClassesDefined());
+            details.put("classesRestored", metrics.getClassesRestored());
+        }
+        Bulkhead bulkhead = module.getBulkhead();
+        if (bulkhead != null) {
+            Map<String, Object> calls = new LinkedHashMap<>();
+            calls.put("active", bulkhead.getActiveCalls());
+            calls.put("queued", bulkhead.getQueuedCalls());
+            calls.put("rejected", bulkhead.getRejectedCalls());
+            details.put("bulkhead", calls);
+        }
+        Throwable failure = module.getFailure();
+        if (failure != null) {
+            details.put("failure", failure.toString());
+        }
+        return details;
+    }
+}
@@ -0,0 +1,38 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaHealthIndicator.java
+
+package dev.modula.spring.boot;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+/**
+ * Health of the Modula modules, with each module's state, load time and class count as details.
+ *
+ * <p>{@code DOWN} if a module failed to load; {@code OUT_OF_SERVICE} while a module is loading or warming
+ * up, so that a readiness probe keeps traffic away until it is ready; {@code UP} otherwise. Lazy modules
+ * that are not loaded yet and unloaded modules do not affect the status.</p>
+ */
+public class ModulaHealthIndicator extends AbstractHealthIndicator {
+
+    private final ModulaModuleManager moduleManager;
+
+    public ModulaHealthIndicator(ModulaModuleManager moduleManager) {
+        this.moduleManager = moduleManager;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        Status status = Status.UP;
+        for (ManagedModule module : moduleManager.getModules()) {
+            ModuleState state = module.getState();
+            if (state == ModuleState.FAILED) {
+                status = Status.DOWN;
+            } else if (state.isStarting() && status != Status.DOWN) {
+                status = Status.OUT_OF_SERVICE;
+            }
+            builder.withDetail(module.getName(), ModulaEndpoint.describe(module));
+        }
+        builder.status(status);
+    }
+}
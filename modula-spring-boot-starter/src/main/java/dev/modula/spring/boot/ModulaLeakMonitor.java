@@ -0,0 +1,79 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaLeakMonitor.java
+
+package dev.modula.spring.boot;
+
+import dev.modula.core.LoaderLeakDetector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically asks the runtime's {@link LoaderLeakDetector} for class loaders of reloaded or unloaded
+ * modules that are still alive after the grace period, and logs what retains them. Each loader is reported
+ * once, since scanning the leak roots again on every check finds the same paths; its collection later on is
+ * logged too.
+ */
+public class ModulaLeakMonitor implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(ModulaLeakMonitor.class);
+
+    private final LoaderLeakDetector detector;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Suspects already logged; a suspect holds its loader only weakly.
+     */
+    private final Set<LoaderLeakDetector.Suspect> reported = new HashSet<>();
+
+    public ModulaLeakMonitor(LoaderLeakDetector detector, Duration interval) {
+        this.detector = detector;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "modula-leak-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::check, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Logs a warning with the retaining paths of every suspected leak not reported yet.
+     */
+    public synchronized void check() {
+        try {
+            List<LoaderLeakDetector.Suspect> suspects = detector.findSuspects();
+            for (LoaderLeakDetector.Suspect suspect : reported) {
+                if (!suspects.contains(suspect)) {
+                    log.info("Class loader of Modula module '" + suspect.getModuleName()
+                            + "' has been garbage collected");
+                }
+            }
+            reported.retainAll(suspects);
+            for (LoaderLeakDetector.Suspect suspect : suspects) {
+                if (!reported.add(suspect)) {
+                    continue;
+                }
+                StringBuilder msg = new StringBuilder("Class loader of Modula ").append(suspect)
+                        .append(" has not been garbage collected");
+                for (String path : suspect.findRetainingPaths()) {
+                    msg.append("\n    retained by ").append(path);
+                }
+                log.warn(msg);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Modula leak check failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
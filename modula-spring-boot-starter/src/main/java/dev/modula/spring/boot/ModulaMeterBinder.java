@@ -0,0 +1,102 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaMeterBinder.java
+
+package dev.modula.spring.boot;
+
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ModuleMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Binds the class loading metrics of every configured module to Micrometer, tagged with {@code module}.
+ *
+ * <p>The meters read the currently loaded version of each module, so their counts start over after a
+ * reload, like those of a restarted process.</p>
+ *
+ * <p>The bulkhead meters of a module with a bulkhead count since startup.</p>
+ */
+public class ModulaMeterBinder implements MeterBinder {
+
+    private final Collection<ManagedModule> modules;
+
+    public ModulaMeterBinder(Collection<ManagedModule> modules) {
+        this.modules = modules;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (ManagedModule module : modules) {
+            String name = module.getName();
+            FunctionTimer.builder("modula.class.define", module,
+                            m -> read(m, ModuleMetrics::getClassesDefined),
+                            m -> read(m, ModuleMetrics::getDefineTimeNanos), TimeUnit.NANOSECONDS)
+                    .tag("module", name)
+                    .description("Classes defined by the module's loader and the time spent in defineClass")
+                    .register(registry);
+            FunctionTimer.builder("modula.class.read", module,
+                            m -> read(m, ModuleMetrics::getClassesDefined) - read(m, ModuleMetrics::getClassesRestored),
+                            m -> read(m, ModuleMetrics::getReadTimeNanos), TimeUnit.NANOSECONDS)
+                    .tag("module", name)
+                    .description("Class files read from the module's JARs and the time spent reading them")
+                    .register(registry);
+            FunctionCounter.builder("modula.class.bytes.read", module, m -> read(m, ModuleMetrics::getBytesRead))
+                    .tag("module", name)
+                    .baseUnit("bytes")
+                    .description("Class file bytes read from the module's JARs")
+                    .register(registry);
+            FunctionCounter.builder("modula.class.restored", module, m -> read(m, ModuleMetrics::getClassesRestored))
+                    .tag("module", name)
+                    .description("Classes defined from the class data cache")
+                    .register(registry);
+            FunctionCounter.builder("modula.class.not.found", module, m -> read(m, ModuleMetrics::getClassNotFoundCount))
+                    .tag("module", name)
+                    .description("Class lookups that the module could not satisfy")
+                    .register(registry);
+            FunctionCounter.builder("modula.class.shared", module, m -> read(m, ModuleMetrics::getSharedDelegations))
+                    .tag("module", name)
+                    .description("Class lookups delegated to the application because of a shared package")
+                    .register(registry);
+            Bulkhead bulkhead = module.getBulkhead();
+            if (bulkhead != null) {
+                bindTo(registry, name, bulkhead);
+            }
+        }
+    }
+
+    private static void bindTo(MeterRegistry registry, String name, Bulkhead bulkhead) {
+        FunctionTimer.builder("modula.bulkhead.queue.wait", bulkhead,
+                        Bulkhead::getStartedCalls, Bulkhead::getQueueWaitTimeNanos, TimeUnit.NANOSECONDS)
+                .tag("module", name)
+                .description("Calls that got a permit of the module's bulkhead and the time they waited for it")
+                .register(registry);
+        FunctionTimer.builder("modula.bulkhead.execution", bulkhead,
+                        Bulkhead::getCompletedCalls, Bulkhead::getExecutionTimeNanos, TimeUnit.NANOSECONDS)
+                .tag("module", name)
+                .description("Calls completed within the module's bulkhead and the time they ran")
+                .register(registry);
+        Gauge.builder("modula.bulkhead.active", bulkhead, Bulkhead::getActiveCalls)
+                .tag("module", name)
+                .description("Calls running within the module's bulkhead")
+                .register(registry);
+        Gauge.builder("modula.bulkhead.queued", bulkhead, Bulkhead::getQueuedCalls)
+                .tag("module", name)
+                .description("Calls waiting for a permit of the module's bulkhead")
+                .register(registry);
+        FunctionCounter.builder("modula.bulkhead.rejected", bulkhead, Bulkhead::getRejectedCalls)
+                .tag("module", name)
+                .description("Calls rejected by the module's bulkhead")
+                .register(registry);
+    }
+
+    private static long read(ManagedModule module, ToLongFunction<ModuleMetrics> getter) {
+        ModuleMetrics metrics = module.getMetrics();
+        return metrics == null ? 0 : getter.applyAsLong(metrics);
+    }
+}
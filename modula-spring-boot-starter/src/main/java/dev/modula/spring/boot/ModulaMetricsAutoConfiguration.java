@@ -0,0 +1,27 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaMetricsAutoConfiguration.java
+
+package dev.modula.spring.boot;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes module class loading metrics to Micrometer when it is on the classpath.
+ */
+@Configuration
+@ConditionalOnClass(MeterBinder.class)
+@ConditionalOnBean(ModulaModuleManager.class)
+@ConditionalOnProperty(prefix = "modula.metrics", name = "enabled", matchIfMissing = true)
+@AutoConfigureAfter(ModulaAutoConfiguration.class)
+public class ModulaMetricsAutoConfiguration {
+
+    @Bean
+    public ModulaMeterBinder modulaMeterBinder(ModulaModuleManager moduleManager) {
+        return new ModulaMeterBinder(moduleManager.getModules());
+    }
+}
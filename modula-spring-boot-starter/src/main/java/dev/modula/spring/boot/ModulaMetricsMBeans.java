@@ -0,0 +1,106 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModulaMetricsMBeans.java
+
+package dev.modula.spring.boot;
+
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ModuleMetrics;
+import dev.modula.core.ModuleMetricsMXBean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Registers the class loading metrics of every configured module in the platform MBean server as
+ * {@code dev.modula:type=Module,name=<module>}. Each MBean follows its module across reloads: it always
+ * reports the metrics of the currently loaded version, or zeros while the module is not loaded.
+ *
+ * <p>The bulkhead of a module, if it has one, is registered as {@code dev.modula:type=Bulkhead,name=<module>};
+ * it lives as long as the module's configuration, not a version.</p>
+ */
+public class ModulaMetricsMBeans implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(ModulaMetricsMBeans.class);
+
+    private final MBeanServer server;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public ModulaMetricsMBeans(Collection<ManagedModule> modules) {
+        this.server = ManagementFactory.getPlatformMBeanServer();
+        for (ManagedModule module : modules) {
+            register(new CurrentModuleMetrics(module), ModuleMetrics.objectName(module.getName()), module);
+            Bulkhead bulkhead = module.getBulkhead();
+            if (bulkhead != null) {
+                register(bulkhead, Bulkhead.objectName(module.getName()), module);
+            }
+        }
+    }
+
+    private void register(Object mbean, ObjectName name, ManagedModule module) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            log.warn("Cannot register JMX metrics of Modula module '" + module.getName() + "'", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Reads the metrics of whatever version of the module is currently loaded.
+     */
+    static final class CurrentModuleMetrics implements ModuleMetricsMXBean {
+        private final ManagedModule module;
+
+        CurrentModuleMetrics(ManagedModule module) {
+            this.module = module;
+        }
+
+        private long read(ToLongFunction<ModuleMetrics> getter) {
+            ModuleMetrics metrics = module.getMetrics();
+            return metrics == null ? 0 : getter.applyAsLong(metrics);
+        }
+
+        @Override
+        public long getClassesDefined() { return read(ModuleMetrics::getClassesDefined); }
+
+        @Override
+        public long getClassesRestored() { return read(ModuleMetrics::getClassesRestored); }
+
+        @Override
+        public long getBytesRead() { return read(ModuleMetrics::getBytesRead); }
+
+        @Override
+        public long getReadTimeNanos() { return read(ModuleMetrics::getReadTimeNanos); }
+
+        @Override
+        public long getDefineTimeNanos() { return read(ModuleMetrics::getDefineTimeNanos); }
+
+        @Override
+        public long getClassNotFoundCount() { return read(ModuleMetrics::getClassNotFoundCount); }
+
+        @Override
+        public long getSharedDelegations() { return read(ModuleMetrics::getSharedDelegations); }
+    }
+}
@@ -2,25 +2,319 @@
 
 package dev.modula.spring.boot;
 
+import dev.modula.core.Bulkhead;
+import dev.modula.core.InstanceScope;
+import dev.modula.core.ModuleSpec;
 import dev.modula.core.ModulaRuntime;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 @Component
 public class ModulaModuleManager {
 
-    private final Map<String, ModulaRuntime.IsolatedModule> modules;
+    private static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(30);
 
-    public ModulaModuleManager(Map<String, ModulaRuntime.IsolatedModule> modules) {
+    private final Map<String, ManagedModule> modules;
+    private final Duration drainTimeout;
+
+    public ModulaModuleManager(Map<String, ManagedModule> modules) {
+        this(modules, DEFAULT_DRAIN_TIMEOUT);
+    }
+
+    public ModulaModuleManager(Map<String, ManagedModule> modules, Duration drainTimeout) {
         this.modules = modules;
+        this.drainTimeout = drainTimeout;
     }
 
+    /**
+     * Instantiates an exported class of a module. A lazy module is loaded by its first call.
+     * Calls on the instance bypass the module's bulkhead; use {@link #invoke} or {@link #getProxy} where it
+     * should apply.
+     */
     public <T> T getInstance(String moduleName, String className, Class<T> interfaceType) {
-        ModulaRuntime.IsolatedModule module = modules.get(moduleName);
+        return getModule(moduleName).get().getInstance(className, interfaceType);
+    }
+
+    /**
+     * Returns an instance of an exported class of a module in the given scope;
+     * {@link InstanceScope#SINGLETON} reuses one instance per module and class, for hot paths.
+     */
+    public <T> T getInstance(String moduleName, String className, Class<T> interfaceType, InstanceScope scope) {
+        return getModule(moduleName).get().getInstance(className, interfaceType, scope);
+    }
+
+    /**
+     * Returns a proxy of an exported class of a module that sets the module's class loader as the thread context
+     * class loader for every call, see {@link ModulaRuntime.IsolatedModule#getProxy(String, Class, InstanceScope)}.
+     * Like an instance, the proxy stays on the version of the module it was obtained from.
+     *
+     * <p>If the module has a bulkhead, every call through the proxy is admitted by it like a call of
+     * {@link #invoke(String, String, Class, InstanceScope, Function)}, and a
+     * {@link dev.modula.core.BulkheadFullException} is thrown if it is not.</p>
+     */
+    public <T> T getProxy(String moduleName, String className, Class<T> interfaceType, InstanceScope scope) {
+        ManagedModule managed = getModule(moduleName);
+        Bulkhead bulkhead = managed.getBulkhead();
+        if (bulkhead == null) {
+            return managed.get().getProxy(className, interfaceType, scope);
+        }
+        return managed.get().getProxy(className, interfaceType, scope, bulkhead);
+    }
+
+    /**
+     * Calls an instance of an exported class of a module as a tracked in-flight call: a reload or unload
+     * of the module waits for the call to finish before closing the version it runs on.
+     */
+    public <T, R> R invoke(String moduleName, String className, Class<T> interfaceType,
+                           Function<? super T, ? extends R> action) {
+        return invoke(moduleName, className, interfaceType, InstanceScope.PROTOTYPE, action);
+    }
+
+    /**
+     * Same as {@link #invoke(String, String, Class, Function)}, with the given instance scope.
+     *
+     * <p>If the module has a bulkhead, the call runs on the caller's thread once the bulkhead admits it, and a
+     * {@link dev.modula.core.BulkheadFullException} is thrown if it does not.</p>
+     */
+    public <T, R> R invoke(String moduleName, String className, Class<T> interfaceType, InstanceScope scope,
+                           Function<? super T, ? extends R> action) {
+        ManagedModule managed = getModule(moduleName);
+        Bulkhead bulkhead = managed.getBulkhead();
+        if (bulkhead == null) {
+            return invoke(managed, className, interfaceType, scope, action);
+        }
+        return bulkhead.call(() -> invoke(managed, className, interfaceType, scope, action));
+    }
+
+    /**
+     * Calls an instance of an exported class of a module on the module's bulkhead executor, so that the caller's
+     * thread, e.g. a request thread of the web server, is not held while the module works. The call is tracked
+     * in flight like {@link #invoke(String, String, Class, InstanceScope, Function)}.
+     *
+     * @return a future of the result, completed exceptionally with a {@link dev.modula.core.BulkheadFullException}
+     *         if the bulkhead rejects the call
+     * @throws IllegalStateException if the module has no bulkhead
+     */
+    public <T, R> CompletableFuture<R> invokeAsync(String moduleName, String className, Class<T> interfaceType,
+                                                   InstanceScope scope, Function<? super T, ? extends R> action) {
+        ManagedModule managed = getModule(moduleName);
+        Bulkhead bulkhead = managed.getBulkhead();
+        if (bulkhead == null) {
+            throw new IllegalStateException("Modula module '" + moduleName + "' has no bulkhead to run calls on;"
+                    + " enable modula.modules[].bulkhead");
+        }
+        return bulkhead.submit(() -> invoke(managed, className, interfaceType, scope, action));
+    }
+
+    private static <T, R> R invoke(ManagedModule managed, String className, Class<T> interfaceType,
+                                   InstanceScope scope, Function<? super T, ? extends R> action) {
+        while (true) {
+            ModulaRuntime.IsolatedModule module = managed.get();
+            if (module.tryAcquire()) {
+                try {
+                    return action.apply(module.getInstance(className, interfaceType, scope));
+                } finally {
+                    module.release();
+                }
+            }
+            // Lost the race with a reload: the next get() returns the new version.
+        }
+    }
+
+    /**
+     * Replaces a module with a new version built from the same spec, i.e. re-reads its JARs from disk.
+     *
+     * <p>The old version reads its files until it is drained and closed, memory-mapped ones included, so a new
+     * version of a file must be written to a new file and renamed into place, not written over the old one; a
+     * file overwritten in place is logged as a warning.</p>
+     */
+    public void reload(String moduleName) {
+        reload(moduleName, getModule(moduleName).getSpec());
+    }
+
+    /**
+     * Replaces a module with a new version: {@code spec} is loaded next to the running version, lookups
+     * switch to it atomically, then in-flight calls on the old version are drained and its loader is closed.
+     * If the new version fails to load, the running version is kept and the error is thrown.
+     *
+     * <p>Loaded modules importing packages from the module, directly or not, still use the old version's
+     * loader, so they are reloaded from their own specs right after it, in import order, before any old
+     * version is closed. If one of them fails to load, it keeps running on its old version, the old versions
+     * it imports from stay open, and an {@link IllegalStateException} is thrown once the others are done.</p>
+     */
+    public synchronized void reload(String moduleName, ModuleSpec spec) {
+        ManagedModule managed = getModule(moduleName);
+        List<ManagedModule> importers = loadedImportersOf(managed);
+        if (importers.isEmpty()) {
+            managed.swap(spec, drainTimeout);
+            return;
+        }
+        Map<ManagedModule, ModulaRuntime.IsolatedModule> previous = new LinkedHashMap<>();
+        previous.put(managed, managed.replace(spec));
+        ManagedModule failed = null;
+        RuntimeException failure = null;
+        for (ManagedModule importer : importers) {
+            try {
+                previous.put(importer, importer.replace(importer.getSpec()));
+            } catch (RuntimeException e) {
+                failed = importer;
+                failure = e;
+                break;
+            }
+        }
+        // A module not reloaded still routes to the old versions of the modules it imports from.
+        Set<ManagedModule> keptOpen = new HashSet<>();
+        if (failed != null) {
+            Deque<ManagedModule> stale = new ArrayDeque<>(
+                    importers.subList(importers.indexOf(failed), importers.size()));
+            while (!stale.isEmpty()) {
+                for (ManagedModule exporter : stale.pop().getImports()) {
+                    if (previous.containsKey(exporter) && keptOpen.add(exporter)) {
+                        stale.push(exporter);
+                    }
+                }
+            }
+        }
+        List<ManagedModule> reloaded = new ArrayList<>(previous.keySet());
+        Collections.reverse(reloaded);
+        for (ManagedModule module : reloaded) {
+            if (!keptOpen.contains(module)) {
+                module.retire(previous.get(module), drainTimeout);
+            }
+        }
+        if (failed != null) {
+            throw new IllegalStateException("Modula module '" + failed.getName() + "' failed to reload after '"
+                    + moduleName + "' and still runs on the previous versions of the modules it imports from; the"
+                    + " previous versions of " + namesOf(keptOpen) + " stay open", failure);
+        }
+    }
+
+    /**
+     * Removes a module: drains its in-flight calls and closes its class loader.
+     *
+     * @throws IllegalStateException if a loaded module imports packages from it
+     */
+    public synchronized void unload(String moduleName) {
+        List<ManagedModule> importers = loadedImportersOf(getModule(moduleName));
+        if (!importers.isEmpty()) {
+            throw new IllegalStateException("Cannot unload Modula module '" + moduleName + "': loaded modules "
+                    + namesOf(importers) + " import from it; unload them first");
+        }
+        ManagedModule managed = modules.remove(moduleName);
+        if (managed == null) {
+            throw new IllegalArgumentException("Module not found: " + moduleName);
+        }
+        managed.unload(drainTimeout);
+    }
+
+    /**
+     * Returns the loaded modules that import from {@code exporter}, directly or through other modules, each
+     * after the modules it imports from.
+     */
+    private List<ManagedModule> loadedImportersOf(ManagedModule exporter) {
+        Set<ManagedModule> importers = new HashSet<>();
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (ManagedModule module : modules.values()) {
+                if (module.isLoaded() && !importers.contains(module)) {
+                    for (ManagedModule imported : module.getImports()) {
+                        if (imported == exporter || importers.contains(imported)) {
+                            added = importers.add(module);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        List<ManagedModule> ordered = new ArrayList<>(importers.size());
+        for (ManagedModule module : importers) {
+            addInImportOrder(module, importers, ordered);
+        }
+        return ordered;
+    }
+
+    private static void addInImportOrder(ManagedModule module, Set<ManagedModule> importers,
+                                         List<ManagedModule> ordered) {
+        if (ordered.contains(module)) {
+            return;
+        }
+        for (ManagedModule imported : module.getImports()) {
+            if (importers.contains(imported)) {
+                addInImportOrder(imported, importers, ordered);
+            }
+        }
+        ordered.add(module);
+    }
+
+    private static List<String> namesOf(Collection<ManagedModule> modules) {
+        List<String> names = new ArrayList<>(modules.size());
+        for (ManagedModule module : modules) {
+            names.add(module.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Closes every loaded module; called when the application context shuts down.
+     */
+    public void close() {
+        for (ManagedModule managed : modules.values()) {
+            managed.unload(Duration.ZERO);
+        }
+    }
+
+    /**
+     * Returns the lifecycle state of a module.
+     */
+    public ModuleState getState(String moduleName) {
+        return getModule(moduleName).getState();
+    }
+
+    /**
+     * Returns whether a module serves calls right now, without loading or waiting for it; use it to route
+     * requests away from modules that are still loading or warming up.
+     */
+    public boolean isReady(String moduleName) {
+        ManagedModule module = modules.get(moduleName);
+        return module != null && module.isReady();
+    }
+
+    /**
+     * Returns a future completed once the module is ready, see {@link ManagedModule#whenReady()}.
+     */
+    public CompletableFuture<ManagedModule> whenReady(String moduleName) {
+        return getModule(moduleName).whenReady();
+    }
+
+    /**
+     * Returns every configured module that has not been unloaded.
+     */
+    public Collection<ManagedModule> getModules() {
+        return Collections.unmodifiableCollection(modules.values());
+    }
+
+    /**
+     * Returns a configured module, loaded or not, e.g. to inspect its load time.
+     */
+    public ManagedModule getModule(String moduleName) {
+        ManagedModule module = modules.get(moduleName);
         if (module == null) {
             throw new IllegalArgumentException("Module not found: " + moduleName);
         }
-        return module.getInstance(className, interfaceType);
+        return module;
     }
 }
\ No newline at end of file
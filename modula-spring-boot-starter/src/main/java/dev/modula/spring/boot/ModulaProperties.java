@@ -2,12 +2,19 @@
 
 package dev.modula.spring.boot;
 
+import dev.modula.core.Bulkhead;
+import dev.modula.core.ClassDataCache;
+import dev.modula.core.IoEngine;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @ConfigurationProperties(prefix = "modula")
@@ -15,6 +22,26 @@ public class ModulaProperties {
 
     private List<ModuleDef> modules = new ArrayList<>();
 
+    /**
+     * Maximum number of modules loaded at the same time by {@link LoadMode#EAGER_PARALLEL}.
+     */
+    private int loadParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * How long a reload or unload waits for in-flight calls on the old version before closing it.
+     */
+    private Duration drainTimeout = Duration.ofSeconds(30);
+
+    private LeakDetection leakDetection = new LeakDetection();
+
+    private ClassDataCacheDef classDataCache = new ClassDataCacheDef();
+
+    private Metrics metrics = new Metrics();
+
+    private SharedLibraries sharedLibraries = new SharedLibraries();
+
+    private Warmup warmup = new Warmup();
+
     public List<ModuleDef> getModules() {
         return modules;
     }
@@ -23,12 +50,130 @@ public class ModulaProperties {
         this.modules = modules;
     }
 
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    public void setLoadParallelism(int loadParallelism) {
+        this.loadParallelism = loadParallelism;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    public LeakDetection getLeakDetection() {
+        return leakDetection;
+    }
+
+    public void setLeakDetection(LeakDetection leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    public ClassDataCacheDef getClassDataCache() {
+        return classDataCache;
+    }
+
+    public void setClassDataCache(ClassDataCacheDef classDataCache) {
+        this.classDataCache = classDataCache;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SharedLibraries getSharedLibraries() {
+        return sharedLibraries;
+    }
+
+    public void setSharedLibraries(SharedLibraries sharedLibraries) {
+        this.sharedLibraries = sharedLibraries;
+    }
+
+    public Warmup getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(Warmup warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Verification that class loaders of reloaded or unloaded modules get garbage collected.
+     */
+    public static class LeakDetection {
+        private boolean enabled = true;
+        /**
+         * How long a retired loader may stay alive before it is reported; also the check interval.
+         */
+        private Duration gracePeriod = Duration.ofMinutes(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getGracePeriod() { return gracePeriod; }
+        public void setGracePeriod(Duration gracePeriod) { this.gracePeriod = gracePeriod; }
+    }
+
+    /**
+     * When a module is loaded.
+     */
+    public enum LoadMode {
+        /**
+         * Loaded at startup on the startup thread, one after another (default).
+         */
+        EAGER,
+        /**
+         * Loaded at startup on a bounded pool of {@code load-parallelism} threads; startup waits for all of them.
+         */
+        EAGER_PARALLEL,
+        /**
+         * Loaded on the first {@link ModulaModuleManager#getInstance} call for the module.
+         */
+        LAZY
+    }
+
     public static class ModuleDef {
         private String name;
         private Path adapterJar;
+        private Path moduleArchive;
         private List<Path> dependencyJars = new ArrayList<>();
+        /**
+         * Libraries, each a list of JARs, see {@link dev.modula.core.ModuleSpec.Builder#library}.
+         */
+        private List<List<Path>> libraries = new ArrayList<>();
         private Set<String> sharedPackages = new HashSet<>();
         private Set<String> exportedClasses = new HashSet<>();
+        /**
+         * Packages, with their sub-packages, that other modules may import; if empty, those recorded in the
+         * module's bundle, if {@code module-archive} is one.
+         */
+        private Set<String> exportedPackages = new LinkedHashSet<>();
+        /**
+         * Packages imported from other modules, by module name; no packages imports all the module exports.
+         */
+        private Map<String, Set<String>> imports = new LinkedHashMap<>();
+        private PackageRulesDef packageRules = new PackageRulesDef();
+        private IoEngine ioEngine = IoEngine.JAR_FILE;
+        private LoadMode loadMode = LoadMode.EAGER;
+        private WarmupDef warmup = new WarmupDef();
+        private BulkheadDef bulkhead = new BulkheadDef();
+        /**
+         * Class names of {@link dev.modula.core.ClassTransformer}s applied in order, each with a no-arg constructor.
+         */
+        private List<String> transformers = new ArrayList<>();
+        /**
+         * Where the transformers' output is cached between starts; not cached if unset.
+         */
+        private Path transformCacheDir;
 
         // Getters and Setters
         public String getName() { return name; }
@@ -37,13 +182,200 @@ public class ModulaProperties {
         public Path getAdapterJar() { return adapterJar; }
         public void setAdapterJar(Path adapterJar) { this.adapterJar = adapterJar; }
 
+        public Path getModuleArchive() { return moduleArchive; }
+        public void setModuleArchive(Path moduleArchive) { this.moduleArchive = moduleArchive; }
+
         public List<Path> getDependencyJars() { return dependencyJars; }
         public void setDependencyJars(List<Path> dependencyJars) { this.dependencyJars = dependencyJars; }
 
+        public List<List<Path>> getLibraries() { return libraries; }
+        public void setLibraries(List<List<Path>> libraries) { this.libraries = libraries; }
+
         public Set<String> getSharedPackages() { return sharedPackages; }
         public void setSharedPackages(Set<String> sharedPackages) { this.sharedPackages = sharedPackages; }
 
         public Set<String> getExportedClasses() { return exportedClasses; }
         public void setExportedClasses(Set<String> exportedClasses) { this.exportedClasses = exportedClasses; }
+
+        public Set<String> getExportedPackages() { return exportedPackages; }
+        public void setExportedPackages(Set<String> exportedPackages) { this.exportedPackages = exportedPackages; }
+
+        public Map<String, Set<String>> getImports() { return imports; }
+        public void setImports(Map<String, Set<String>> imports) { this.imports = imports; }
+
+        public PackageRulesDef getPackageRules() { return packageRules; }
+        public void setPackageRules(PackageRulesDef packageRules) { this.packageRules = packageRules; }
+
+        public IoEngine getIoEngine() { return ioEngine; }
+        public void setIoEngine(IoEngine ioEngine) { this.ioEngine = ioEngine; }
+
+        public LoadMode getLoadMode() { return loadMode; }
+        public void setLoadMode(LoadMode loadMode) { this.loadMode = loadMode; }
+
+        public WarmupDef getWarmup() { return warmup; }
+        public void setWarmup(WarmupDef warmup) { this.warmup = warmup; }
+
+        public BulkheadDef getBulkhead() { return bulkhead; }
+        public void setBulkhead(BulkheadDef bulkhead) { this.bulkhead = bulkhead; }
+
+        public List<String> getTransformers() { return transformers; }
+        public void setTransformers(List<String> transformers) { this.transformers = transformers; }
+
+        public Path getTransformCacheDir() { return transformCacheDir; }
+        public void setTransformCacheDir(Path transformCacheDir) { this.transformCacheDir = transformCacheDir; }
+    }
+
+    /**
+     * Package rules of one module, by {@link dev.modula.core.DelegationRule}; see
+     * {@link dev.modula.core.ModuleSpec.Builder#packageRule}.
+     */
+    public static class PackageRulesDef {
+        private Set<String> parentFirst = new LinkedHashSet<>();
+        private Set<String> childFirst = new LinkedHashSet<>();
+        private Set<String> parentOnly = new LinkedHashSet<>();
+        private Set<String> moduleOnly = new LinkedHashSet<>();
+
+        public Set<String> getParentFirst() { return parentFirst; }
+        public void setParentFirst(Set<String> parentFirst) { this.parentFirst = parentFirst; }
+
+        public Set<String> getChildFirst() { return childFirst; }
+        public void setChildFirst(Set<String> childFirst) { this.childFirst = childFirst; }
+
+        public Set<String> getParentOnly() { return parentOnly; }
+        public void setParentOnly(Set<String> parentOnly) { this.parentOnly = parentOnly; }
+
+        public Set<String> getModuleOnly() { return moduleOnly; }
+        public void setModuleOnly(Set<String> moduleOnly) { this.moduleOnly = moduleOnly; }
+    }
+
+    /**
+     * Warm-up of one module, see {@link dev.modula.core.ModuleWarmup}; off unless {@code enabled}.
+     */
+    public static class WarmupDef {
+        private boolean enabled = false;
+        private Set<String> classes = new LinkedHashSet<>();
+        /**
+         * File listing classes to load, one per line.
+         */
+        private Path classList;
+        /**
+         * Whether classes restored from the class data cache are loaded too.
+         */
+        private boolean cachedClasses = true;
+        /**
+         * Exported {@link Runnable} classes run once after the classes are loaded.
+         */
+        private List<String> hooks = new ArrayList<>();
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Set<String> getClasses() { return classes; }
+        public void setClasses(Set<String> classes) { this.classes = classes; }
+
+        public Path getClassList() { return classList; }
+        public void setClassList(Path classList) { this.classList = classList; }
+
+        public boolean isCachedClasses() { return cachedClasses; }
+        public void setCachedClasses(boolean cachedClasses) { this.cachedClasses = cachedClasses; }
+
+        public List<String> getHooks() { return hooks; }
+        public void setHooks(List<String> hooks) { this.hooks = hooks; }
+    }
+
+    /**
+     * Bulkhead of one module's {@link ModulaModuleManager#invoke invoke} calls, see {@link Bulkhead}; off unless
+     * {@code enabled}.
+     */
+    public static class BulkheadDef {
+        private boolean enabled = false;
+        /**
+         * Calls that may run at the same time.
+         */
+        private int maxConcurrentCalls = 25;
+        /**
+         * Calls that may wait for one of them to finish; further calls are rejected at once.
+         */
+        private int maxQueuedCalls = 0;
+        /**
+         * How long a queued call waits before it is rejected.
+         */
+        private Duration maxWait = Duration.ZERO;
+        /**
+         * {@code platform} or, on Java 21+, {@code virtual} threads for {@link ModulaModuleManager#invokeAsync}.
+         */
+        private Bulkhead.Threads threads = Bulkhead.Threads.PLATFORM;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getMaxConcurrentCalls() { return maxConcurrentCalls; }
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) { this.maxConcurrentCalls = maxConcurrentCalls; }
+
+        public int getMaxQueuedCalls() { return maxQueuedCalls; }
+        public void setMaxQueuedCalls(int maxQueuedCalls) { this.maxQueuedCalls = maxQueuedCalls; }
+
+        public Duration getMaxWait() { return maxWait; }
+        public void setMaxWait(Duration maxWait) { this.maxWait = maxWait; }
+
+        public Bulkhead.Threads getThreads() { return threads; }
+        public void setThreads(Bulkhead.Threads threads) { this.threads = threads; }
+    }
+
+    /**
+     * The pool module warm-ups run on.
+     */
+    public static class Warmup {
+        /**
+         * Maximum number of warm-up threads, shared by all modules.
+         */
+        private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        /**
+         * How long a load or reload waits for the warm-up before it marks the module ready anyway.
+         */
+        private Duration timeout = Duration.ofMinutes(1);
+
+        public int getThreads() { return threads; }
+        public void setThreads(int threads) { this.threads = threads; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    }
+
+    /**
+     * Class data cache of the modules, see {@link ClassDataCache}; off unless {@code dir} is set.
+     */
+    public static class ClassDataCacheDef {
+        private Path dir;
+        /**
+         * {@code record} for a training run, {@code restore} for normal starts.
+         */
+        private ClassDataCache.Mode mode = ClassDataCache.Mode.RESTORE;
+
+        public Path getDir() { return dir; }
+        public void setDir(Path dir) { this.dir = dir; }
+
+        public ClassDataCache.Mode getMode() { return mode; }
+        public void setMode(ClassDataCache.Mode mode) { this.mode = mode; }
+    }
+
+    /**
+     * Sharing of identical module libraries, see {@link dev.modula.core.SharedLibraryLayer}; off by default.
+     */
+    public static class SharedLibraries {
+        private boolean enabled = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    }
+
+    /**
+     * Per-module class loading metrics, exposed over JMX and, if present, Micrometer.
+     */
+    public static class Metrics {
+        private boolean enabled = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+// 文件路径: modula-spring-boot-starter/src/main/java/dev/modula/spring/boot/ModuleState.java
+
+package dev.modula.spring.boot;
+
+/**
+ * The lifecycle state of a {@link ManagedModule}.
+ *
+ * <pre>
+ * NOT_LOADED --&gt; LOADING --&gt; WARMING --&gt; READY --&gt; DRAINING --&gt; UNLOADED
+ *                  |            |
+ *                  +------------+--&gt; FAILED --&gt; LOADING (next attempt)
+ * </pre>
+ *
+ * A reload keeps the module {@link #READY}: the running version serves calls until the new one is ready.
+ */
+public enum ModuleState {
+    /**
+     * A lazy module that no call has needed yet.
+     */
+    NOT_LOADED,
+    /**
+     * The module's class loader is being created.
+     */
+    LOADING,
+    /**
+     * The module is loaded and running its warm-up; it does not serve calls yet.
+     */
+    WARMING,
+    /**
+     * The module serves calls.
+     */
+    READY,
+    /**
+     * The last load attempt failed; the next call tries again.
+     */
+    FAILED,
+    /**
+     * The module is being unloaded and waits for its in-flight calls.
+     */
+    DRAINING,
+    /**
+     * The module was unloaded and cannot be used again.
+     */
+    UNLOADED;
+
+    /**
+     * Returns whether the module is on its way to {@link #READY}.
+     *
+     * @return {@code true} for {@link #LOADING} and {@link #WARMING}
+     */
+    public boolean isStarting() {
+        return this == LOADING || this == WARMING;
+    }
+}
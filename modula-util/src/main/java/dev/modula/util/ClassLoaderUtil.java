@@ -1,6 +1,7 @@
 package dev.modula.util;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -43,4 +44,22 @@ public class ClassLoaderUtil {
         return result;
     }
 
+    /**
+     * Converts a relative path to a JAR/ZIP entry name, joining its elements with '/'
+     * whatever the platform separator is.<br/>
+     *
+     * @param relative a relative path, e.g. lib\logback-core-1.4.14.jar on Windows
+     * @return the entry name, e.g. lib/logback-core-1.4.14.jar
+     */
+    public static String toEntryName(Path relative) {
+        StringBuilder name = new StringBuilder();
+        for (Path element : relative) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(element.toString());
+        }
+        return name.toString();
+    }
+
 }
\ No newline at end of file
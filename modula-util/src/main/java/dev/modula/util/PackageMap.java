@@ -0,0 +1,186 @@
+package dev.modula.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compiled, immutable map from packages to values, looked up by class or resource name.<br/>
+ * <br/>
+ * An entry is either a prefix, ending with a dot, which covers the package and all of its sub-packages,
+ * e.g. {@code dev.modula.} covers {@code dev.modula.core.Bar} but not {@code dev.modulax.Baz}, or an exact
+ * package, which covers that package only. When several entries cover a class, the most specific one
+ * wins: the longest prefix, and an exact package over a prefix of the same package, e.g. with
+ * {@code com.acme.} and {@code com.acme.internal.}, the class {@code com.acme.internal.Foo} gets the
+ * value of the latter.<br/>
+ * <br/>
+ * The entries are stored in a character trie that a lookup walks once up to the last dot of the name,
+ * so it costs the length of the name whatever the number of entries, and allocates nothing.
+ *
+ * @param <V> the type of the values
+ */
+public final class PackageMap<V> {
+
+    private final Node<V> root;
+
+    private PackageMap(Node<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * Creates a builder.<br/>
+     *
+     * @param <V> the type of the values
+     * @return a new, empty builder
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Returns the value of the most specific entry covering a class.<br/>
+     *
+     * @param className the fully qualified class name
+     * @return the value, or {@code null} if no entry covers the class
+     */
+    public V get(String className) {
+        return lookup(className, '.');
+    }
+
+    /**
+     * Returns the value of the most specific entry covering a resource, whose directory, with '/' read
+     * as '.', is taken as its package.<br/>
+     *
+     * @param resourceName the resource name, e.g. dev/modula/core/messages.properties
+     * @return the value, or {@code null} if no entry covers the resource
+     */
+    public V getForResource(String resourceName) {
+        return lookup(resourceName, '/');
+    }
+
+    private V lookup(String name, char separator) {
+        int end = name.lastIndexOf(separator) + 1;
+        Node<V> node = root;
+        V value = null;
+        for (int i = 0; i < end; i++) {
+            char c = name.charAt(i);
+            node = node.child(c == separator ? '.' : c);
+            if (node == null) {
+                return value;
+            }
+            if (node.prefixValue != null) {
+                value = node.prefixValue;
+            }
+        }
+        // The walk ended on the package's own trailing dot.
+        return end > 0 && node.exactValue != null ? node.exactValue : value;
+    }
+
+    /**
+     * Collects the entries of a {@link PackageMap}. A later entry for the same package replaces an earlier one.
+     *
+     * @param <V> the type of the values
+     */
+    public static final class Builder<V> {
+
+        private final MutableNode<V> root = new MutableNode<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Maps a package and its sub-packages.<br/>
+         *
+         * @param prefix the package prefix, ending with a dot ('.'), e.g. {@code com.acme.}
+         * @param value the value
+         * @return this builder
+         * @throws IllegalArgumentException if the prefix does not end with a dot
+         */
+        public Builder<V> prefix(String prefix, V value) {
+            if (!prefix.endsWith(".")) {
+                throw new IllegalArgumentException("Package prefix must end with '.': " + prefix);
+            }
+            node(prefix).prefixValue = value;
+            return this;
+        }
+
+        /**
+         * Maps a single package, not its sub-packages.<br/>
+         *
+         * @param packageName the package name, e.g. {@code javax.sql}
+         * @param value the value
+         * @return this builder
+         */
+        public Builder<V> exact(String packageName, V value) {
+            node(packageName + '.').exactValue = value;
+            return this;
+        }
+
+        /**
+         * Compiles the entries.<br/>
+         *
+         * @return the map
+         */
+        public PackageMap<V> build() {
+            return new PackageMap<>(root.freeze());
+        }
+
+        private MutableNode<V> node(String path) {
+            MutableNode<V> node = root;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.children.computeIfAbsent(path.charAt(i), c -> new MutableNode<>());
+            }
+            return node;
+        }
+    }
+
+    private static final class Node<V> {
+        /**
+         * Branch characters, sorted; {@link #children} holds the node for each at the same index.
+         */
+        private final char[] keys;
+        private final Node<V>[] children;
+        final V prefixValue;
+        final V exactValue;
+
+        Node(char[] keys, Node<V>[] children, V prefixValue, V exactValue) {
+            this.keys = keys;
+            this.children = children;
+            this.prefixValue = prefixValue;
+            this.exactValue = exactValue;
+        }
+
+        Node<V> child(char c) {
+            char[] k = keys;
+            if (k.length <= 8) {
+                for (int i = 0; i < k.length; i++) {
+                    if (k[i] == c) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+            int i = Arrays.binarySearch(k, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    private static final class MutableNode<V> {
+        final TreeMap<Character, MutableNode<V>> children = new TreeMap<>();
+        V prefixValue;
+        V exactValue;
+
+        Node<V> freeze() {
+            char[] keys = new char[children.size()];
+            @SuppressWarnings("unchecked")
+            Node<V>[] nodes = (Node<V>[]) new Node<?>[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode<V>> e : children.entrySet()) {
+                keys[i] = e.getKey();
+                nodes[i] = e.getValue().freeze();
+                i++;
+            }
+            return new Node<>(keys, nodes, prefixValue, exactValue);
+        }
+    }
+}